@@ -0,0 +1,92 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Canonical instances of values (e.g., decoded images) that are identified by the hash of their content,
+ * so that equal content is held in memory only once. The values are referenced only weakly here,
+ * that is, they are kept only as long as they are used elsewhere (e.g., by the cached pages).
+ * @param <K> Type of the keys, which must implement equals() and hashCode().
+ * @param <V> Type of the values.
+ */
+class ContentInterner<K, V> {
+	private final Map<K, ValueRef<K, V>> values = new HashMap<>();
+	private final ReferenceQueue<V> collectedValues = new ReferenceQueue<>();
+
+	private static class ValueRef<K, V> extends WeakReference<V> {
+		final K key;
+		ValueRef(final K key, final V value, final ReferenceQueue<V> queue) {
+			super(value, queue);
+			this.key = key;
+		}
+	}
+
+	/** @return The canonical value of the key, or null if there's none (anymore). */
+	synchronized V get(final K key) {
+		purgeCollected();
+		final ValueRef<K, V> ref = values.get(key);
+		return ref != null ? ref.get() : null;
+	}
+
+	/**
+	 * @param key Key of the value.
+	 * @param value Value to become the canonical one, unless there's one already.
+	 * @return The canonical value of the key, which is the given value only if there was none before.
+	 */
+	synchronized V intern(final K key, final V value) {
+		final V existing = get(key);
+		if (existing != null) return existing;
+		values.put(key, new ValueRef<>(key, value, collectedValues));
+		return value;
+	}
+
+	/** Forgets all canonical values, so the next interning of any key keeps the given value. */
+	synchronized void clear() {
+		purgeCollected();
+		values.clear();
+	}
+
+	synchronized int size() {
+		purgeCollected();
+		return values.size();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void purgeCollected() {
+		ValueRef<K, V> ref;
+		while ((ref = (ValueRef<K, V>)collectedValues.poll()) != null) {
+			values.remove(ref.key, ref);
+		}
+	}
+}
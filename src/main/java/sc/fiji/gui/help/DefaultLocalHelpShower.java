@@ -30,92 +30,312 @@ package sc.fiji.gui.help;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
 public class DefaultLocalHelpShower implements HelpShower {
 	final String dialogTitle;
-	final Path pathToLocalHelp;
-	int currentPage;
+	final HelpPagesSource pages;
+	/** The page that is shown first when the window is opened. */
+	final int startPage;
+	/** The most recently opened window of this help, or null if it is closed. */
+	HelpWindow window = null;
 
 	DefaultLocalHelpShower(final Path pathToLocalHelp, final String dialogWindowTitle) {
-		this.pathToLocalHelp = pathToLocalHelp;
+		this(new DirectoryPagesSource(pathToLocalHelp), dialogWindowTitle);
+	}
+
+	DefaultLocalHelpShower(final HelpPagesSource pages, final String dialogWindowTitle) {
+		this(pages, dialogWindowTitle, 1);
+	}
+
+	/**
+	 * @param pages Pages of the topic.
+	 * @param dialogWindowTitle Title of the help window.
+	 * @param startPage The page to be shown when the window opens, values below 1 mean the first page.
+	 */
+	DefaultLocalHelpShower(final HelpPagesSource pages, final String dialogWindowTitle, final int startPage) {
+		this.pages = pages;
 		this.dialogTitle = dialogWindowTitle;
+		this.startPage = Math.max(startPage, 1);
 	}
 
 	@Override
 	public void showNonModalHelpNow() {
-		final Panel contentPane = new Panel();
-		contentPane.setLayout(new GridBagLayout());
-
-		final Dimension minSizeImg = new Dimension(300, 200);
-		final Dimension minSizeTxt = new Dimension(300, 100);
-		final Dimension preferredSizeImg = new Dimension(600, 400);
-		final Dimension preferredSizeTxt = new Dimension(600, 200);
-
-		final JLabel imagePane = new JLabel();
-		imagePane.setMinimumSize(minSizeImg);
-		imagePane.setPreferredSize(preferredSizeImg);
-
-		final JEditorPane textPane = new JEditorPane();
-		textPane.setEditable(false);
-		textPane.setContentType("text/html");
-		textPane.setMinimumSize(minSizeTxt);
-		textPane.setPreferredSize(preferredSizeTxt);
-
-		//TODO: add buttons!
-		final JButton prevB = new JButton("Previous");
-		final JButton nextB = new JButton("Next");
-		final JButton closeB = new JButton("Got it, close");
-
-		currentPage = 1;
-		fillPage(imagePane, textPane);
-		//
-		prevB.addActionListener((l) -> {
-					if (currentPage > 1) {
-						--currentPage;
-						fillPage(imagePane, textPane);
-					}
-				});
-		nextB.addActionListener((l) -> {
-				++currentPage;
-				fillPage(imagePane, textPane);
+		if (HelpWindows.obtain().bringToFront(pages) != null) return;
+		openWindow(startPage);
+	}
+
+	@Override
+	public boolean isOpen() {
+		return HelpWindows.obtain().isOpen(pages);
+	}
+
+	static final Dimension PREFERRED_IMAGE_SIZE = new Dimension(600, 400);
+
+	private static volatile int navigatorThreshold = 10;
+
+	/**
+	 * Sets the number of pages from which on the local help windows show the strip of page thumbnails
+	 * (see {@link PageNavigator}), default is 10. Use {@link Integer#MAX_VALUE} to never show it.
+	 * @param minPages The minimum number of pages of a topic to show its thumbnails.
+	 */
+	public static void setNavigatorThreshold(final int minPages) {
+		navigatorThreshold = minPages;
+	}
+
+	public static int getNavigatorThreshold() {
+		return navigatorThreshold;
+	}
+
+	/** Prefetches the start page for the same display as used by the first {@link HelpWindow#fillPage()}. */
+	@Override
+	public void warmUp() {
+		//NB: the image pane is not yet shown then, so its preferred size and no scaling is used
+		HelpPagesCache.obtain().prefetchPage(pages, startPage,
+				new HelpPagesCache.Display(PREFERRED_IMAGE_SIZE.width, PREFERRED_IMAGE_SIZE.height, 1.0));
+	}
+
+	/**
+	 * Shows the help on the given page. If the help window is opened already, it is brought to front
+	 * and switched to the given page (unless the window belongs to another help of the same topic).
+	 * @param pageNo Page number of the page.
+	 */
+	void showNonModalHelpNow(final int pageNo) {
+		final JFrame shown = HelpWindows.obtain().bringToFront(pages);
+		if (shown != null) {
+			final HelpWindow w = window;
+			if (w != null && w.frame == shown) w.goToPage(pageNo);
+			return;
+		}
+		openWindow(pageNo);
+	}
+
+	private void openWindow(final int pageNo) {
+		final HelpWindow w = new HelpWindow(pageNo);
+		window = w;
+		w.frame.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosed(WindowEvent e) {
+				if (window == w) window = null;
+			}
 		});
+		w.frame.setVisible(true);
+		HelpWindows.obtain().register(pages, w.frame);
+	}
+
+	/**
+	 * One open window of this help. Every window keeps its own current page and pending page load,
+	 * so that more windows of the same topic can be open at once (see {@link HelpWindows#setReuseWindows(boolean)}).
+	 */
+	class HelpWindow {
+		final JFrame frame;
+		final JLabel imagePane;
+		final JEditorPane textPane;
+		final JButton prevB, nextB;
+		final JSpinner pageSpinner;
+		final PageNavigator navigator;
+		final Timer refitTimer;
+		int currentPage;
+		HelpPagesCache.PendingPage pendingPage = null;
+		boolean isAdjustingPageSpinner = false;
+		HelpPagesCache.Display display = HelpPagesCache.Display.NATURAL;
+
+		HelpWindow(final int pageNo) {
+			final Panel contentPane = new Panel();
+			contentPane.setLayout(new GridBagLayout());
+
+			final Dimension minSizeImg = new Dimension(300, 200);
+			final Dimension minSizeTxt = new Dimension(300, 100);
+			final Dimension preferredSizeImg = new Dimension(PREFERRED_IMAGE_SIZE);
+			final Dimension preferredSizeTxt = new Dimension(600, 200);
 
-		final GridBagConstraints c = new GridBagConstraints();
-		c.anchor = GridBagConstraints.CENTER;
-		c.fill = GridBagConstraints.BOTH;
-		c.gridwidth = 3;
-		c.gridx = 0;
-		c.gridy = 0;
-		contentPane.add(imagePane, c);
-		c.gridy = 1;
-		contentPane.add(textPane, c);
-
-		//TODO: add buttons!
-		c.gridwidth = 1;
-		c.weightx = 0.33;
-		c.gridy = 2;
-		contentPane.add(prevB, c);
-		c.gridx = 1;
-		contentPane.add(nextB, c);
-		c.gridx = 2;
-		contentPane.add(closeB, c);
-
-		JFrame f = new JFrame(dialogTitle);
-		f.setContentPane(contentPane);
-		f.pack();
-		f.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
-		f.setVisible(true);
-
-		closeB.addActionListener((l) -> f.setVisible(false));
+			imagePane = new JLabel();
+			imagePane.setHorizontalAlignment(JLabel.CENTER);
+			imagePane.setMinimumSize(minSizeImg);
+			imagePane.setPreferredSize(preferredSizeImg);
+
+			textPane = new JEditorPane();
+			textPane.setEditable(false);
+			textPane.setContentType("text/html");
+			textPane.setMinimumSize(minSizeTxt);
+			textPane.setPreferredSize(preferredSizeTxt);
+
+			//TODO: add buttons!
+			prevB = new JButton("Previous");
+			nextB = new JButton("Next");
+			final JButton closeB = new JButton("Got it, close");
+			pageSpinner = new JSpinner(new SpinnerNumberModel(pageNo, 1, Integer.MAX_VALUE, 1));
+			pageSpinner.setToolTipText("Go to page");
+
+			//the thumbnails of large topics
+			navigator = new PageNavigator(pages, this::goToPage);
+			navigator.showIfAtLeast(navigatorThreshold,
+					(count) -> ((SpinnerNumberModel)pageSpinner.getModel()).setMaximum(Math.max(count, 1)));
+
+			currentPage = pageNo;
+			fillPage();
+			//
+			prevB.addActionListener((l) -> {
+						if (currentPage > 1) {
+							--currentPage;
+							fillPage();
+						}
+					});
+			nextB.addActionListener((l) -> {
+					++currentPage;
+					fillPage();
+			});
+			pageSpinner.addChangeListener((l) -> {
+				if (!isAdjustingPageSpinner) goToPage((Integer)pageSpinner.getValue());
+			});
+
+			//the image is re-decoded (lazily) only after the resizing has settled
+			refitTimer = new Timer(300, (l) -> refitPage());
+			refitTimer.setRepeats(false);
+			imagePane.addComponentListener(new ComponentAdapter() {
+				@Override
+				public void componentResized(ComponentEvent e) { refitTimer.restart(); }
+			});
+
+			final GridBagConstraints c = new GridBagConstraints();
+			c.anchor = GridBagConstraints.CENTER;
+			c.fill = GridBagConstraints.BOTH;
+			c.gridwidth = 4;
+			c.gridx = 0;
+			c.gridy = 0;
+			c.weightx = 1.0;
+			c.weighty = 1.0; //NB: only the image grows when the window is enlarged
+			contentPane.add(imagePane, c);
+			c.weighty = 0.0;
+			c.gridy = 1;
+			contentPane.add(navigator.getComponent(), c);
+			c.gridy = 2;
+			contentPane.add(textPane, c);
+
+			//TODO: add buttons!
+			c.gridwidth = 1;
+			c.weightx = 0.3;
+			c.gridy = 3;
+			contentPane.add(prevB, c);
+			c.gridx = 1;
+			c.weightx = 0.1;
+			contentPane.add(pageSpinner, c);
+			c.gridx = 2;
+			c.weightx = 0.3;
+			contentPane.add(nextB, c);
+			c.gridx = 3;
+			contentPane.add(closeB, c);
+
+			//the pages edited by the topic authors are re-shown in place, see TopicWatcher
+			final TopicWatcher.ChangeListener changesListener = (isChanged) -> {
+				if (isChanged.test(currentPage)) reloadPage();
+				navigator.refresh();
+			};
+			TopicWatcher.obtain().addListener(pages, changesListener);
+
+			frame = new JFrame(dialogTitle);
+			frame.setContentPane(contentPane);
+			frame.pack();
+			frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+			frame.addWindowListener(new WindowAdapter() {
+				@Override
+				public void windowClosed(WindowEvent e) {
+					refitTimer.stop();
+					cancelPendingPage();
+					navigator.dispose();
+					TopicWatcher.obtain().removeListener(pages, changesListener);
+				}
+			});
+
+			//NB: disposing the window cancels the pending page too
+			closeB.addActionListener((l) -> frame.dispose());
+		}
+
+		/**
+		 * Shows the current page if it's readily available, or shows a placeholder and
+		 * requests the page to be loaded in the background (and shown afterwards).
+		 * The previously requested page, if not yet shown, will not be shown anymore.
+		 */
+		void fillPage() {
+			cancelPendingPage();
+			final HelpPagesCache cache = HelpPagesCache.obtain();
+			display = HelpPagesCache.Display.of(imagePane);
+			final HelpPagesCache.Page page = cache.getCachedPage(pages, currentPage, display);
+			prevB.setEnabled(currentPage > 1);
+			isAdjustingPageSpinner = true;
+			pageSpinner.setValue(currentPage);
+			isAdjustingPageSpinner = false;
+			navigator.setCurrentPage(currentPage);
+			if (page != null) {
+				showPage(page);
+			} else {
+				nextB.setEnabled(false);
+				imagePane.setIcon(null);
+				showText(textPane, "Loading page "+currentPage+"...");
+				pendingPage = cache.requestPage(pages, currentPage, display, this::showPage);
+			}
+
+			//the neighbouring pages are likely to be visited next
+			cache.prefetchPage(pages, currentPage+1, display);
+			cache.prefetchPage(pages, currentPage-1, display);
+		}
+
+		/** Shows the given page, e.g., chosen from the thumbnails, loading only that page (and its neighbours). */
+		void goToPage(final int pageNo) {
+			if (pageNo < 1 || pageNo == currentPage) return;
+			currentPage = pageNo;
+			fillPage();
+		}
+
+		/**
+		 * Re-requests the current page, without showing the placeholder meanwhile, if the image pane
+		 * has changed its size (or screen) such that a differently decoded image would be needed.
+		 */
+		void refitPage() {
+			final HelpPagesCache.Display newDisplay = HelpPagesCache.Display.of(imagePane);
+			if (newDisplay.equals(display)) return;
+
+			cancelPendingPage();
+			display = newDisplay;
+			pendingPage = HelpPagesCache.obtain().requestPage(pages, currentPage, display, this::showPage);
+		}
+
+		/** Re-requests the current page, without showing the placeholder meanwhile, after it has been changed. */
+		void reloadPage() {
+			cancelPendingPage();
+			pendingPage = HelpPagesCache.obtain().requestPage(pages, currentPage, display, this::showPage);
+		}
+
+		void showPage(final HelpPagesCache.Page page) {
+			//TODO can fail reading the png, provide placeholder then.. like missed file and the path to it
+			imagePane.setIcon(page.image);
+			//NB: the same text is likely already shown when only the image was re-fitted
+			if (page.document == null) showText(textPane, page.html);
+			else if (!page.html.equals(textPane.getDocument().getProperty(HelpPagesCache.HTML_SOURCE_PROPERTY))) {
+				textPane.setDocument(page.document);
+			}
+			nextB.setEnabled(!page.isLastPage);
+		}
+
+		void cancelPendingPage() {
+			if (pendingPage != null) pendingPage.cancel();
+			pendingPage = null;
+		}
 	}
 
-	void fillPage(final JLabel imagePane, final JEditorPane textPane) {
-		//TODO can fail reading the png, provide placeholder then.. like missed file and the path to it
-		imagePane.setIcon(new ImageIcon(pathToLocalHelp.resolve(currentPage + ".png").toString()));
-		textPane.setText(readCompleteFile(pathToLocalHelp.resolve(currentPage + ".html")));
+	/**
+	 * Parses the text into a new document. Note that {@link JEditorPane#setText(String)} would be
+	 * otherwise re-using the current document, which may be the (shared) document of a cached page.
+	 */
+	static void showText(final JEditorPane textPane, final String html) {
+		textPane.setDocument(textPane.getEditorKit().createDefaultDocument());
+		textPane.setText(html);
 	}
 
 	public static String readCompleteFile(final Path path) {
@@ -30,8 +30,11 @@ package sc.fiji.gui.help;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.IOException;
 import java.net.URL;
+import java.util.concurrent.Future;
 
 public class DefaultRemoteHelpShower implements HelpShower {
 	final String dialogTitle;
@@ -44,6 +47,10 @@ public class DefaultRemoteHelpShower implements HelpShower {
 
 	@Override
 	public void showNonModalHelpNow() {
+		//NB: URL.equals() may be resolving host names, the textual form is used instead
+		final String topic = urlToRemoteHelp.toExternalForm();
+		if (HelpWindows.obtain().bringToFront(topic) != null) return;
+
 		final Panel contentPane = new Panel();
 		contentPane.setLayout(new GridBagLayout());
 
@@ -56,11 +63,7 @@ public class DefaultRemoteHelpShower implements HelpShower {
 		final JEditorPane textPane = new JEditorPane();
 		textPane.setEditable(false);
 		textPane.setContentType("text/html");
-		try {
-			textPane.setPage(urlToRemoteHelp);
-		} catch (IOException e) {
-			textPane.setText("FALL BACK CONTENT because failed opening the URL:<br/>"+urlToRemoteHelp);
-		}
+		final Future<?> loading = loadContent(textPane);
 		textPane.setMinimumSize(minSize);
 		textPane.setPreferredSize(preferredSize);
 
@@ -80,6 +83,62 @@ public class DefaultRemoteHelpShower implements HelpShower {
 		f.setContentPane(contentPane);
 		f.pack();
 		f.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+		f.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosed(WindowEvent e) {
+				if (loading != null) loading.cancel(true);
+			}
+		});
 		f.setVisible(true);
+		HelpWindows.obtain().register(topic, f);
+	}
+
+	@Override
+	public boolean isOpen() {
+		return HelpWindows.obtain().isOpen(urlToRemoteHelp.toExternalForm());
+	}
+
+	/** Fetches the web content into the {@link RemoteHelpCache} in the background. */
+	@Override
+	public void warmUp() {
+		final String protocol = urlToRemoteHelp.getProtocol();
+		if (!protocol.equals("http") && !protocol.equals("https")) return;
+		RemoteHelpCache.obtain().requestPage(urlToRemoteHelp, page -> {}, e -> {});
+	}
+
+	/**
+	 * Web content is fetched (via the {@link RemoteHelpCache}) in the background while a placeholder
+	 * is displayed, other content (e.g., local files) is displayed right away.
+	 * @return Handle to cancel the fetching, or null if nothing is being fetched.
+	 */
+	Future<?> loadContent(final JEditorPane textPane) {
+		final String protocol = urlToRemoteHelp.getProtocol();
+		if (!protocol.equals("http") && !protocol.equals("https")) {
+			showContent(textPane, urlToRemoteHelp);
+			return null;
+		}
+
+		textPane.setText("Loading "+urlToRemoteHelp+" ...");
+		return RemoteHelpCache.obtain().requestPage(urlToRemoteHelp,
+				page -> {
+					try {
+						showContent(textPane, RemoteHelpCache.obtain().getCachedUrl(urlToRemoteHelp));
+					} catch (IOException e) {
+						showFallbackContent(textPane);
+					}
+				},
+				e -> showFallbackContent(textPane));
+	}
+
+	void showContent(final JEditorPane textPane, final URL content) {
+		try {
+			textPane.setPage(content);
+		} catch (IOException e) {
+			showFallbackContent(textPane);
+		}
+	}
+
+	void showFallbackContent(final JEditorPane textPane) {
+		textPane.setText("FALL BACK CONTENT because failed opening the URL:<br/>"+urlToRemoteHelp);
 	}
 }
@@ -0,0 +1,81 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Pages of a help topic that are stored as files in a folder. The folder can be on any
+ * file system, e.g., inside a JAR file (which is a ZIP file system), see
+ * {@link HelpManager#constructPathToLocalTopics(Class, String)}.
+ */
+public class DirectoryPagesSource implements HelpPagesSource {
+	final Path topicFolder;
+
+	public DirectoryPagesSource(final Path topicFolder) {
+		this.topicFolder = topicFolder;
+	}
+
+	public Path getTopicFolder() {
+		return topicFolder;
+	}
+
+	@Override
+	public boolean exists(final String fileName) {
+		return Files.exists(topicFolder.resolve(fileName));
+	}
+
+	@Override
+	public ByteBuffer read(final String fileName) throws IOException {
+		return ByteBuffer.wrap(Files.readAllBytes(topicFolder.resolve(fileName)));
+	}
+
+	@Override
+	public String describe(final String fileName) {
+		return topicFolder.resolve(fileName).toString();
+	}
+
+	@Override
+	public int hashCode() {
+		return topicFolder.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof DirectoryPagesSource && topicFolder.equals(((DirectoryPagesSource)obj).topicFolder);
+	}
+
+	@Override
+	public String toString() {
+		return topicFolder.toString();
+	}
+}
@@ -0,0 +1,183 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Emits the measurements as JDK Flight Recorder events of the category "Local GUI Help",
+ * e.g., <code>HelpManager.setMetrics(new FlightRecorderMetrics());</code> and then
+ * <code>java -XX:StartFlightRecording:filename=help.jfr ...</code> or via JDK Mission Control.
+ * The events are created only while a recording that includes them is running.
+ * <p>
+ * NB: the events are defined at runtime (via the jdk.jfr.EventFactory) because the
+ * jdk.jfr API is not available when compiling for Java 8; the JVM however must provide it.
+ */
+public class FlightRecorderMetrics implements HelpMetrics {
+	/** @return True if this JVM provides the Flight Recorder API. */
+	public static boolean isAvailable() {
+		try {
+			Class.forName("jdk.jfr.EventFactory");
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	/** @throws UnsupportedOperationException If this JVM doesn't provide the Flight Recorder API. */
+	public FlightRecorderMetrics() {
+		try {
+			helpKeyEvents = new EventKind("HelpKeyResolved", "Help Key Resolved",
+					duration("lookupTime"), field(int.class, "candidatesScanned", "Candidates Scanned"),
+					field(boolean.class, "matched", "Matched"));
+			helpTriggerEvents = new EventKind("HelpTriggered", "Help Triggered",
+					field(String.class, "outcome", "Outcome"));
+			helpShownEvents = new EventKind("HelpShown", "Help Shown",
+					field(String.class, "help", "Help"), duration("openingTime"));
+			pageLoadedEvents = new EventKind("PageLoaded", "Page Loaded",
+					field(String.class, "topic", "Topic"), field(int.class, "page", "Page"),
+					duration("readingTime"), duration("decodingTime"));
+			pageCacheEvents = new EventKind("PageCacheLookup", "Page Cache Lookup",
+					field(String.class, "topic", "Topic"), field(int.class, "page", "Page"),
+					field(boolean.class, "hit", "Hit"));
+			remoteFetchEvents = new EventKind("RemoteFetch", "Remote Fetch",
+					field(String.class, "url", "URL"), duration("fetchTime"), field(String.class, "outcome", "Outcome"));
+		} catch (ReflectiveOperationException | LinkageError e) {
+			throw new UnsupportedOperationException("Flight Recorder is not available: "+e.getMessage(), e);
+		}
+	}
+
+	private final EventKind helpKeyEvents, helpTriggerEvents, helpShownEvents, pageLoadedEvents, pageCacheEvents, remoteFetchEvents;
+
+	@Override
+	public void helpKeyResolved(final long duration, final int candidatesScanned, final boolean matched) {
+		helpKeyEvents.commit(duration, candidatesScanned, matched);
+	}
+
+	@Override
+	public void helpTriggered(final TriggerOutcome outcome) {
+		helpTriggerEvents.commit(outcome.name());
+	}
+
+	@Override
+	public void helpShown(final HelpShower helpDialog, final long duration) {
+		helpShownEvents.commit(helpDialog.getClass().getName(), duration);
+	}
+
+	@Override
+	public void pageLoaded(final HelpPagesSource topic, final int pageNo, final long readingTime, final long decodingTime) {
+		pageLoadedEvents.commit(topic.describe(""), pageNo, readingTime, decodingTime);
+	}
+
+	@Override
+	public void pageCacheLookup(final HelpPagesSource topic, final int pageNo, final boolean hit) {
+		pageCacheEvents.commit(topic.describe(""), pageNo, hit);
+	}
+
+	@Override
+	public void remoteFetched(final URL url, final long duration, final FetchOutcome outcome) {
+		remoteFetchEvents.commit(url.toExternalForm(), duration, outcome.name());
+	}
+
+	// ==================================================================================================================
+	private static final String CATEGORY = "Local GUI Help";
+	private static final String NAME_PREFIX = "sc.fiji.gui.help.";
+
+	private static Object annotation(final String type, final Object value) throws ReflectiveOperationException {
+		final Constructor<?> c = Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class);
+		return c.newInstance(Class.forName(type), value);
+	}
+
+	private static Object field(final Class<?> type, final String name, final String label) throws ReflectiveOperationException {
+		return field(type, name, annotation("jdk.jfr.Label", label));
+	}
+
+	/** NB: the name must differ from the implicit fields of all events, e.g., "duration" or "startTime". */
+	private static Object duration(final String name) throws ReflectiveOperationException {
+		final String label = Character.toUpperCase(name.charAt(0)) + name.substring(1).replaceAll("([A-Z])", " $1");
+		return field(long.class, name, annotation("jdk.jfr.Label", label), annotation("jdk.jfr.Timespan", "NANOSECONDS"));
+	}
+
+	private static Object field(final Class<?> type, final String name, final Object... annotations) throws ReflectiveOperationException {
+		final Constructor<?> c = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+		return c.newInstance(type, name, Arrays.asList(annotations));
+	}
+
+	/** One type of events, and the means to emit them. */
+	private static class EventKind {
+		final Object factory, eventType;
+		final Method newEvent, isEnabled, set, commit;
+		final String eventName;
+		volatile boolean hasFailed = false;
+
+		EventKind(final String name, final String label, final Object... fields) throws ReflectiveOperationException {
+			eventName = NAME_PREFIX + name;
+			final List<Object> annotations = new ArrayList<>(4);
+			annotations.add(annotation("jdk.jfr.Name", eventName));
+			annotations.add(annotation("jdk.jfr.Label", label));
+			annotations.add(annotation("jdk.jfr.Category", new String[] {CATEGORY}));
+			//NB: the place of the measurement is known, stack traces would be only an overhead
+			annotations.add(annotation("jdk.jfr.StackTrace", false));
+
+			final Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+			factory = factoryClass.getMethod("create", List.class, List.class)
+					.invoke(null, Collections.unmodifiableList(annotations), Arrays.asList(fields));
+			newEvent = factoryClass.getMethod("newEvent");
+			eventType = factoryClass.getMethod("getEventType").invoke(factory);
+			isEnabled = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+
+			final Class<?> eventClass = Class.forName("jdk.jfr.Event");
+			set = eventClass.getMethod("set", int.class, Object.class);
+			commit = eventClass.getMethod("commit");
+		}
+
+		void commit(final Object... values) {
+			try {
+				if (!(Boolean)isEnabled.invoke(eventType)) return;
+				final Object event = newEvent.invoke(factory);
+				for (int i = 0; i < values.length; ++i) set.invoke(event, i, values[i]);
+				commit.invoke(event);
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				//NB: never let the measurements break the help, but tell once why they are missing
+				if (!hasFailed) {
+					hasFailed = true;
+					final Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+					System.err.println("Failed emitting the Flight Recorder event "+eventName+": "+cause);
+				}
+			}
+		}
+	}
+}
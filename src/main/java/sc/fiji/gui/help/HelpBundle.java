@@ -0,0 +1,263 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A single-file, packed collection of local help topics. The file consists of an index (the names and
+ * positions of the files) followed by the concatenated content of all files, where files with the same
+ * content share one copy of it. The bundle file is opened by memory-mapping it, and the files are provided
+ * as read-only views into the mapped memory, that is, without any copying.
+ *
+ * Bundle files are created with {@link HelpBundle#pack(Path, Path)}, typically at build time,
+ * from a folder with topic sub-folders (the same layout as used by {@link DirectoryPagesSource}).
+ * The topics of a bundle are then obtained with {@link HelpBundle#topic(String)}.
+ */
+public class HelpBundle {
+	static final int MAGIC = 0x4C474842; //"LGHB"
+	static final int VERSION = 1;
+
+	private final String name;
+	private final ByteBuffer content;
+	private final Map<String, int[]> index = new HashMap<>();
+
+	HelpBundle(final String name, final ByteBuffer bundle) throws IOException {
+		this.name = name;
+		final ByteBuffer buf = bundle.duplicate();
+		if (buf.remaining() < 12 || buf.getInt() != MAGIC) throw new IOException("Not a help bundle: "+name);
+		if (buf.getInt() != VERSION) throw new IOException("Unsupported version of the help bundle: "+name);
+
+		final int entries = buf.getInt();
+		//NB: every entry takes at least 10 bytes (name length, offset and size)
+		if (entries < 0 || entries * 10L > buf.remaining()) throw corrupted(name, "number of files "+entries);
+		for (int i = 0; i < entries; ++i) {
+			if (buf.remaining() < 2) throw corrupted(name, "index");
+			final byte[] fileName = new byte[buf.getShort() & 0xFFFF];
+			if (buf.remaining() < fileName.length + 8) throw corrupted(name, "index");
+			buf.get(fileName);
+			index.put(new String(fileName, StandardCharsets.UTF_8), new int[] { buf.getInt(), buf.getInt() });
+		}
+		//NB: blobs' offsets are relative to the end of the index
+		this.content = buf.slice();
+		for (Map.Entry<String, int[]> e : index.entrySet()) {
+			final int offset = e.getValue()[0], size = e.getValue()[1];
+			if (offset < 0 || size < 0 || (long)offset + size > content.capacity()) throw corrupted(name, "entry of "+e.getKey());
+		}
+	}
+
+	private static IOException corrupted(final String name, final String what) {
+		return new IOException("Corrupted help bundle "+name+": invalid "+what);
+	}
+
+	/**
+	 * Opens the bundle by memory-mapping the given file.
+	 * @param bundleFile Path to the bundle file.
+	 * @return The opened bundle.
+	 * @throws IOException If the file could not be opened or is not a bundle.
+	 */
+	public static HelpBundle open(final Path bundleFile) throws IOException {
+		try (FileChannel ch = FileChannel.open(bundleFile, StandardOpenOption.READ)) {
+			//NB: the mapping stays valid after the channel is closed
+			return new HelpBundle(bundleFile.toString(), ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+		}
+	}
+
+	/**
+	 * Opens the bundle from the resources of the given class. The bundle is memory-mapped
+	 * if it's a standalone file, otherwise (e.g., when it's inside a JAR file) it's read
+	 * into the memory in one go.
+	 * @param appClass The class whose resource folder holds the bundle.
+	 * @param bundleName The name of the bundle file.
+	 * @return The opened bundle.
+	 * @throws IOException If the bundle was not found, could not be read or is not a bundle.
+	 */
+	public static HelpBundle open(final Class<?> appClass, final String bundleName) throws IOException {
+		final URL url = appClass.getResource(bundleName);
+		if (url == null) throw new IOException("Help bundle "+appClass.getSimpleName()+"/"+bundleName+" was not found.");
+		if (url.getProtocol().equals("file")) {
+			try {
+				return open(Paths.get(url.toURI()));
+			} catch (URISyntaxException e) {
+				//NB: let's try to read it as a stream then
+			}
+		}
+
+		try (InputStream is = url.openStream()) {
+			final ByteArrayOutputStream content = new ByteArrayOutputStream(Math.max(is.available(), 1 << 16));
+			final byte[] chunk = new byte[1 << 16];
+			int len;
+			while ((len = is.read(chunk)) > 0) content.write(chunk, 0, len);
+			return new HelpBundle(url.toString(), ByteBuffer.wrap(content.toByteArray()));
+		}
+	}
+
+	/**
+	 * @param topic The name of the topic (the name of its original folder).
+	 * @return Pages of the topic, which are readable only if the topic exists in this bundle.
+	 */
+	public HelpPagesSource topic(final String topic) {
+		return new BundleTopic(topic);
+	}
+
+	/** @return The names of the topics in this bundle. */
+	public List<String> listTopics() {
+		return index.keySet().stream()
+				.filter(f -> f.indexOf('/') > 0)
+				.map(f -> f.substring(0, f.lastIndexOf('/')))
+				.distinct().sorted().collect(Collectors.toList());
+	}
+
+	ByteBuffer readFile(final String fileName) throws IOException {
+		final int[] pos = index.get(fileName);
+		if (pos == null) throw new IOException("File "+fileName+" not found in the help bundle "+name);
+		final ByteBuffer view = content.duplicate();
+		view.position(pos[0]);
+		view.limit(pos[0] + pos[1]);
+		return view.slice().asReadOnlyBuffer();
+	}
+
+	private class BundleTopic implements HelpPagesSource {
+		final String topic;
+
+		BundleTopic(final String topic) {
+			this.topic = topic;
+		}
+
+		@Override
+		public boolean exists(final String fileName) {
+			return index.containsKey(topic + "/" + fileName);
+		}
+
+		@Override
+		public ByteBuffer read(final String fileName) throws IOException {
+			return readFile(topic + "/" + fileName);
+		}
+
+		HelpBundle bundle() {
+			return HelpBundle.this;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(HelpBundle.this) * 31 + topic.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof BundleTopic)) return false;
+			final BundleTopic t = (BundleTopic)obj;
+			return t.bundle() == HelpBundle.this && t.topic.equals(topic);
+		}
+
+		@Override
+		public String toString() {
+			return name + "!/" + topic;
+		}
+	}
+
+	// ==================================================================================================================
+	/**
+	 * Packs all files from the given folder (recursively) into a bundle file. Files with the same content
+	 * (e.g., a screenshot re-used by several topics) are stored only once, their index entries point to the same blob.
+	 * @param topicsFolder The folder with the topic sub-folders.
+	 * @param bundleFile The bundle file to be created (or overwritten).
+	 * @throws IOException If reading the files or writing the bundle failed.
+	 */
+	public static void pack(final Path topicsFolder, final Path bundleFile) throws IOException {
+		final List<Path> files;
+		try (Stream<Path> s = Files.walk(topicsFolder)) {
+			files = s.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+		}
+
+		final List<String> names = new ArrayList<>(files.size());
+		final List<int[]> positions = new ArrayList<>(files.size());
+		final List<Path> blobs = new ArrayList<>();
+		final Map<String, int[]> blobsByHash = new HashMap<>();
+		long offset = 0;
+		for (Path f : files) {
+			names.add(topicsFolder.relativize(f).toString().replace(f.getFileSystem().getSeparator(), "/"));
+			final String hash = TopicManifest.sha1(ByteBuffer.wrap(Files.readAllBytes(f)));
+			int[] pos = blobsByHash.get(hash);
+			if (pos == null) {
+				final long size = Files.size(f);
+				if (offset + size > Integer.MAX_VALUE) throw new IOException("Help bundle would be too large (over 2 GB).");
+				pos = new int[] { (int)offset, (int)size };
+				blobsByHash.put(hash, pos);
+				blobs.add(f);
+				offset += size;
+			}
+			positions.add(pos);
+		}
+
+		try (OutputStream os = Files.newOutputStream(bundleFile);
+		     DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(files.size());
+			for (int i = 0; i < files.size(); ++i) {
+				final byte[] name = names.get(i).getBytes(StandardCharsets.UTF_8);
+				out.writeShort(name.length);
+				out.write(name);
+				out.writeInt(positions.get(i)[0]);
+				out.writeInt(positions.get(i)[1]);
+			}
+			for (Path f : blobs) Files.copy(f, out);
+		}
+	}
+
+	/** Packs the topics folder, given as the first parameter, into the bundle file, given as the second one. */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.out.println("Usage: HelpBundle topicsFolder bundleFile");
+			return;
+		}
+		pack(Paths.get(args[0]), Paths.get(args[1]));
+	}
+}
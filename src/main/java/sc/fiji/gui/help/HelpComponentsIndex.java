@@ -0,0 +1,437 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+import java.awt.Component;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Window;
+import java.awt.event.ComponentEvent;
+import java.awt.event.ComponentListener;
+import java.awt.event.HierarchyBoundsListener;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spatial index of the help-enabled components, one per top-level container (typically a window).
+ * Every root container keeps a uniform grid over its own (root-relative) coordinates whose cells
+ * list the components that overlap them. The grid is rebuilt lazily, only after some of its components
+ * were reported (by the AWT listeners attached to them) to have moved or resized within the root.
+ * Moving the whole window thus costs nothing, and a lookup costs one pointer-to-root coordinate
+ * transform per showing root and a scan of a single grid cell.
+ *
+ * The index is also the registry of the components: they are keyed by their identity and are
+ * referenced only weakly, so that registering a component doesn't prevent it (and its window)
+ * from being garbage collected. Note that the help dialog is, however, referenced strongly
+ * and it should therefore not reference its component.
+ *
+ * The index is thread-safe: components can be added and removed concurrently from any thread
+ * (the registry is a concurrent map, and an entry is re-placed under its own lock only), and the
+ * lookups take no locks at all as they read only an immutable snapshot of the grid, which is
+ * replaced (by the lookup itself) whenever the components of the root have changed.
+ */
+class HelpComponentsIndex {
+	/** Edge length (in pixels) of one grid cell. */
+	static final int CELL_SIZE = 64;
+
+	private final ReferenceQueue<Component> collectedComponents = new ReferenceQueue<>();
+	private final Map<ComponentKey, Entry> entries = new ConcurrentHashMap<>();
+	private final Map<ComponentKey, RootIndex> roots = new ConcurrentHashMap<>();
+	private final AtomicInteger nextSequenceNo = new AtomicInteger(0);
+
+	/** Should components be unregistered when they are removed from their window? */
+	volatile boolean unregisterOnRemoval = true;
+
+	/** Adds (or replaces the help of) the given component. */
+	void add(final Component component, final HelpShower helpDialog) {
+		purgeCollected();
+		final Entry newEntry = new Entry(component, helpDialog, nextSequenceNo.getAndIncrement());
+		final Entry e = entries.putIfAbsent(newEntry.key, newEntry);
+		if (e != null) {
+			e.helpDialog = helpDialog;
+			return;
+		}
+
+		component.addComponentListener(newEntry);
+		component.addHierarchyBoundsListener(newEntry);
+		component.addHierarchyListener(newEntry);
+		place(newEntry);
+	}
+
+	/** @return False if the given component was not present in this index, else True. */
+	boolean remove(final Component component) {
+		purgeCollected();
+		final Entry e = entries.remove(new ComponentKey(component));
+		if (e == null) return false;
+
+		component.removeComponentListener(e);
+		component.removeHierarchyBoundsListener(e);
+		component.removeHierarchyListener(e);
+		unplace(e);
+		return true;
+	}
+
+	/** @return Help of the given component, or null if the component is not registered. */
+	HelpShower get(final Component component) {
+		final Entry e = entries.get(new ComponentKey(component));
+		return e != null ? e.helpDialog : null;
+	}
+
+	/** @return Number of the currently registered components. */
+	int size() {
+		purgeCollected();
+		return entries.size();
+	}
+
+	/** @return Number of the components that were considered during the last {@link HelpComponentsIndex#findAt(Point, Component)}. */
+	int getCandidatesScanned() {
+		return candidatesScanned;
+	}
+
+	private volatile int candidatesScanned = 0;
+
+	/** Drops entries of the components that were garbage collected meanwhile. */
+	private void purgeCollected() {
+		Reference<? extends Component> ref;
+		while ((ref = collectedComponents.poll()) != null) {
+			final Entry e = entries.remove(ref);
+			if (e != null) unplace(e);
+			else roots.remove(ref);
+		}
+	}
+
+	/**
+	 * Finds the smallest (considering the current size of components) registered component
+	 * that is showing under the given screen position. Components of the focused window are
+	 * preferred over components of other windows that happen to be at the same position.
+	 *
+	 * @param screenPos Position in the screen coordinates, typically of the mouse pointer.
+	 * @param preferredRoot Root container to be consulted first, can be null.
+	 * @return Help of the found component, or null if there's no such component.
+	 */
+	HelpShower findAt(final Point screenPos, final Component preferredRoot) {
+		final Entry e = findEntryAt(screenPos, preferredRoot);
+		return e != null ? e.helpDialog : null;
+	}
+
+	/** @return The component that {@link HelpComponentsIndex#findAt(Point, Component)} would find, or null. */
+	Component findComponentAt(final Point screenPos, final Component preferredRoot) {
+		final Entry e = findEntryAt(screenPos, preferredRoot);
+		return e != null ? e.key.get() : null;
+	}
+
+	/** @return True if the given component is (still) showing under the given screen position. */
+	boolean isShowingAt(final Component component, final Point screenPos) {
+		if (!isShowing(component)) return false;
+		final Point pos = getLocationOnScreen(component);
+		return component.contains(screenPos.x - pos.x, screenPos.y - pos.y);
+	}
+
+	private Entry findEntryAt(final Point screenPos, final Component preferredRoot) {
+		purgeCollected();
+		final int[] scanned = new int[1];
+		try {
+			if (preferredRoot != null) {
+				final RootIndex ri = roots.get(new ComponentKey(preferredRoot));
+				final Placed p = ri != null ? ri.findAt(screenPos, scanned) : null;
+				if (p != null) return p.entry;
+			}
+
+			Placed best = null;
+			for (RootIndex ri : roots.values()) {
+				if (ri.root.get() == preferredRoot) continue;
+				final Placed p = ri.findAt(screenPos, scanned);
+				if (p != null && (best == null || p.isPreferredOver(best))) best = p;
+			}
+			return best != null ? best.entry : null;
+		} finally {
+			candidatesScanned = scanned[0];
+		}
+	}
+
+	/** Moves the entry into the index of its current root container. */
+	private void place(final Entry e) {
+		final Component component = e.key.get();
+		final Component root = component != null ? getRoot(component) : null;
+		synchronized (e) {
+			if (e.removed) return;
+			if (e.home != null) {
+				if (e.home.root.get() == root) {
+					e.home.dirty = true;
+					return;
+				}
+				final boolean hasLeftWindow = e.home.root.get() instanceof Window && !(root instanceof Window);
+				leaveHome(e);
+				if (hasLeftWindow && unregisterOnRemoval) {
+					//NB: the component has left its window, but it may be just re-parented (e.g., by Container.add()),
+					//    so it is unregistered only if it's still detached after the current event is processed
+					SwingUtilities.invokeLater(() -> unregisterIfDetached(e));
+				}
+			}
+
+			if (root == null) return; //NB: will be placed later, when added into some hierarchy
+			e.home = roots.compute(new ComponentKey(root, collectedComponents), (key, ri) -> {
+				if (ri == null) ri = new RootIndex(key);
+				ri.members.add(e);
+				ri.dirty = true;
+				return ri;
+			});
+		}
+	}
+
+	private void unregisterIfDetached(final Entry e) {
+		final Component component = e.key.get();
+		if (component == null || entries.get(new ComponentKey(component)) != e) return;
+		if (!(getRoot(component) instanceof Window)) remove(component);
+	}
+
+	/** Removes the (already unregistered) entry from the index of its root container. */
+	private void unplace(final Entry e) {
+		synchronized (e) {
+			e.removed = true;
+			if (e.home != null) leaveHome(e);
+		}
+	}
+
+	private void leaveHome(final Entry e) {
+		roots.computeIfPresent(e.home.root, (key, ri) -> {
+			ri.members.remove(e);
+			ri.dirty = true;
+			return ri.members.isEmpty() ? null : ri;
+		});
+		e.home = null;
+	}
+
+	// ==================================================================================================================
+	private class Entry implements ComponentListener, HierarchyBoundsListener, HierarchyListener {
+		final ComponentKey key;
+		volatile HelpShower helpDialog;
+		final int sequenceNo;
+
+		/** The index of the root container this component is currently placed in, guarded by this entry. */
+		volatile RootIndex home = null;
+		/** Set once this entry is unregistered, guarded by this entry. */
+		boolean removed = false;
+
+		Entry(final Component component, final HelpShower helpDialog, final int sequenceNo) {
+			this.key = new ComponentKey(component, collectedComponents);
+			this.helpDialog = helpDialog;
+			this.sequenceNo = sequenceNo;
+		}
+
+		boolean isShowing() {
+			final Component component = key.get();
+			return component != null && HelpComponentsIndex.this.isShowing(component);
+		}
+
+		private void markDirty() {
+			final RootIndex h = home;
+			if (h != null) h.dirty = true;
+		}
+
+		@Override
+		public void componentResized(ComponentEvent e) { markDirty(); }
+		@Override
+		public void componentMoved(ComponentEvent e) { markDirty(); }
+		@Override
+		public void componentShown(ComponentEvent e) { markDirty(); }
+		@Override
+		public void componentHidden(ComponentEvent e) {}
+
+		@Override
+		public void ancestorMoved(HierarchyEvent e) {
+			//NB: the grid is in the root's coordinates, moving the root itself changes nothing
+			final RootIndex h = home;
+			if (h == null || e.getChanged() != h.root.get()) markDirty();
+		}
+		@Override
+		public void ancestorResized(HierarchyEvent e) { markDirty(); }
+
+		@Override
+		public void hierarchyChanged(HierarchyEvent e) {
+			if ((e.getChangeFlags() & (HierarchyEvent.PARENT_CHANGED | HierarchyEvent.DISPLAYABILITY_CHANGED)) != 0) {
+				place(this);
+			}
+		}
+	}
+
+	/** The entry together with its geometry at the time of the grid rebuild. */
+	private static class Placed {
+		final Entry entry;
+		/** Visible part of the component, in root coordinates. */
+		final Rectangle visibleBounds;
+		/** Area of the full component. */
+		final long area;
+
+		Placed(final Entry entry, final Rectangle visibleBounds, final long area) {
+			this.entry = entry;
+			this.visibleBounds = visibleBounds;
+			this.area = area;
+		}
+
+		/** Smaller components win, and the earlier registered wins among the equally large ones. */
+		boolean isPreferredOver(final Placed other) {
+			return area < other.area || (area == other.area && entry.sequenceNo < other.entry.sequenceNo);
+		}
+	}
+
+	// ==================================================================================================================
+	private class RootIndex {
+		final ComponentKey root;
+		final Set<Entry> members = ConcurrentHashMap.newKeySet();
+		/** Immutable snapshot, replaced as a whole after the members or their geometry have changed. */
+		volatile Map<Long, Placed[]> grid = Collections.emptyMap();
+		volatile boolean dirty = true;
+
+		RootIndex(final ComponentKey root) {
+			this.root = root;
+		}
+
+		Placed findAt(final Point screenPos, final int[] scanned) {
+			final Component root = this.root.get();
+			if (root == null || !isShowing(root)) return null;
+			final Point rootPos = getLocationOnScreen(root);
+			final int x = screenPos.x - rootPos.x;
+			final int y = screenPos.y - rootPos.y;
+			if (x < 0 || y < 0 || x >= root.getWidth() || y >= root.getHeight()) return null;
+
+			Map<Long, Placed[]> grid = this.grid;
+			if (dirty) {
+				//NB: changes that happen during the rebuild will mark it dirty again
+				dirty = false;
+				grid = rebuild(root);
+				this.grid = grid;
+			}
+			final Placed[] cell = grid.get( cellKey(Math.floorDiv(x,CELL_SIZE), Math.floorDiv(y,CELL_SIZE)) );
+			if (cell == null) return null;
+
+			scanned[0] += cell.length;
+			Placed best = null;
+			for (Placed p : cell) {
+				if (p.visibleBounds.contains(x,y) && p.entry.isShowing()
+						&& (best == null || p.isPreferredOver(best))) best = p;
+			}
+			return best;
+		}
+
+		Map<Long, Placed[]> rebuild(final Component root) {
+			final Map<Long, List<Placed>> cells = new HashMap<>();
+			final Rectangle rootBounds = new Rectangle(0,0, root.getWidth(), root.getHeight());
+			for (Entry e : members) {
+				final Component component = e.key.get();
+				if (component == null) continue;
+				final Rectangle visible = component instanceof JComponent
+						? ((JComponent)component).getVisibleRect()
+						: new Rectangle(0,0, component.getWidth(), component.getHeight());
+				final Placed p = new Placed(e, SwingUtilities.convertRectangle(component, visible, root),
+						(long)component.getWidth() * (long)component.getHeight());
+				final Rectangle r = p.visibleBounds.intersection(rootBounds);
+				if (r.isEmpty()) continue;
+
+				final int cx1 = Math.floorDiv(r.x, CELL_SIZE);
+				final int cy1 = Math.floorDiv(r.y, CELL_SIZE);
+				final int cx2 = Math.floorDiv(r.x + r.width - 1, CELL_SIZE);
+				final int cy2 = Math.floorDiv(r.y + r.height - 1, CELL_SIZE);
+				for (int cy = cy1; cy <= cy2; ++cy)
+					for (int cx = cx1; cx <= cx2; ++cx)
+						cells.computeIfAbsent(cellKey(cx,cy), k -> new ArrayList<>(4)).add(p);
+			}
+
+			final Map<Long, Placed[]> grid = new HashMap<>(cells.size() * 4 / 3 + 1);
+			for (Map.Entry<Long, List<Placed>> c : cells.entrySet()) grid.put(c.getKey(), c.getValue().toArray(new Placed[0]));
+			return grid;
+		}
+	}
+
+	/**
+	 * Geometry queries are routed through this method, {@link HelpComponentsIndex#getLocationOnScreen(Component)}
+	 * and {@link HelpComponentsIndex#getRoot(Component)} so that they can be substituted, e.g., to exercise the index in a headless environment.
+	 */
+	boolean isShowing(final Component c) {
+		return c.isShowing();
+	}
+
+	/** @see HelpComponentsIndex#isShowing(Component) */
+	Point getLocationOnScreen(final Component c) {
+		return c.getLocationOnScreen();
+	}
+
+	/** @see HelpComponentsIndex#isShowing(Component) */
+	Component getRoot(final Component c) {
+		return SwingUtilities.getRoot(c);
+	}
+
+	/**
+	 * Weak reference to a component that is equal to another such reference
+	 * iff both refer to the very same component (or are the very same reference).
+	 */
+	static class ComponentKey extends WeakReference<Component> {
+		private final int hash;
+
+		ComponentKey(final Component component) {
+			super(component);
+			hash = System.identityHashCode(component);
+		}
+
+		ComponentKey(final Component component, final ReferenceQueue<Component> queue) {
+			super(component, queue);
+			hash = System.identityHashCode(component);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof ComponentKey)) return false;
+			final Component c = get();
+			return c != null && c == ((ComponentKey)obj).get();
+		}
+	}
+
+	static long cellKey(final int cx, final int cy) {
+		return ((long)cx << 32) | (cy & 0xFFFFFFFFL);
+	}
+}
@@ -2,6 +2,7 @@ package sc.fiji.gui.help;
 
 import javax.swing.Action;
 import javax.swing.AbstractAction;
+import javax.swing.SwingUtilities;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
@@ -11,10 +12,13 @@ import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URI;
 import java.net.URL;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  void HM.obtain().getKeyboardAction()
@@ -23,20 +27,65 @@ import java.util.List;
  -- keyboard focus is (obviously) not altered
 
  void HM.obtain().registerComponentHelp(forThisComponent, ....help params....)
- -- registers the component into the _sorted_ list of "help-enabled components"
- -- when the manager is triggered, it attempts to find _the first_ mouse-over'ed component from the list
+ -- registers the component into the (spatial) index of "help-enabled components"
+ -- when the manager is triggered, it attempts to find _the smallest_ mouse-over'ed component from the index
  */
 public class HelpManager {
-	private HelpManager() {}
+	/**
+	 * Creates a new help manager that is independent of the global one, see {@link HelpManager#obtain()},
+	 * e.g., to manage the help of one window or one plugin. Its entry point, e.g., {@link HelpManager#getKeyboardAction()},
+	 * considers only the components registered with this manager.
+	 */
+	public HelpManager() {
+		this(new HelpComponentsIndex(), null);
+	}
 
-	private static HelpManager instance = null;
+	/**
+	 * Creates a new help manager whose entry point considers first the components registered with this manager,
+	 * and then the components registered with the given parent manager (typically the global one).
+	 * @param parent The manager to be consulted if this manager finds no help, can be null.
+	 */
+	public HelpManager(final HelpManager parent) {
+		this(new HelpComponentsIndex(), parent);
+	}
 
-	/** Returns the one and always the same instance of the help manager. */
-	public static synchronized HelpManager obtain() {
-		if (instance == null) {
-			instance = new HelpManager();
-		}
-		return instance;
+	/** To be used with a substituted index, e.g., for benchmarking. */
+	HelpManager(final HelpComponentsIndex helpIndex) {
+		this(helpIndex, null);
+	}
+
+	private HelpManager(final HelpComponentsIndex helpIndex, final HelpManager parent) {
+		this.helpIndex = helpIndex;
+		this.parent = parent;
+	}
+
+	private final HelpManager parent;
+
+	//NB: the holder class is initialized (thread-safely) by the JVM on the first obtain()
+	private static class GlobalInstance {
+		static final HelpManager instance = new HelpManager();
+	}
+
+	/** Returns the one and always the same instance of the global help manager. */
+	public static HelpManager obtain() {
+		return GlobalInstance.instance;
+	}
+
+	// ==================================================================================================================
+	/** The receiver of the measurements, never null. */
+	static volatile HelpMetrics metrics = HelpMetrics.NONE;
+
+	/**
+	 * Installs the receiver of the measurements of the local help, e.g., {@link FlightRecorderMetrics}.
+	 * @param metrics The receiver, or null to stop measuring.
+	 */
+	public static void setMetrics(final HelpMetrics metrics) {
+		HelpManager.metrics = metrics != null ? metrics : HelpMetrics.NONE;
+	}
+
+	/** @return The currently installed receiver of the measurements, never null. */
+	public static HelpMetrics getMetrics() {
+		return metrics;
 	}
 
 	// ==================================================================================================================
@@ -49,7 +98,7 @@ public class HelpManager {
 	public Action getKeyboardAction() {
 		return new AbstractAction() {
 			@Override
-			public void actionPerformed(ActionEvent e) { processHelpKey(); }
+			public void actionPerformed(ActionEvent e) { triggerHelp(); }
 		};
 	}
 
@@ -59,7 +108,7 @@ public class HelpManager {
 	 * @return Reference on Runnable to trigger the local help
 	 */
 	public Runnable getKeyboardRunnable() {
-		return this::processHelpKey;
+		return this::triggerHelp;
 	}
 
 	/**
@@ -84,22 +133,17 @@ public class HelpManager {
 		public void keyPressed(KeyEvent e) {}
 		@Override
 		public void keyReleased(KeyEvent e) {
-			if (hotKeys.contains( e.getKeyCode() )) processHelpKey();
+			if (hotKeys.contains( e.getKeyCode() )) triggerHelp();
 		}
 	}
 
 	// ==================================================================================================================
-	private class ComponentWithHelp {
-		final Component component;
-		final HelpShower helpDialog;
-
-		ComponentWithHelp(final Component guiElem, final HelpShower helpDialog) {
-			this.component = guiElem;
-			this.helpDialog = helpDialog;
-		}
-	}
-
-	private final List<ComponentWithHelp> helpDialogs = new ArrayList<>(30);
+	/**
+	 * Registry of the help-enabled components, holds them weakly and indexes them spatially.
+	 * It is thread-safe, components can be registered concurrently from any thread (e.g., from
+	 * plugins that build their GUIs in parallel), and the lookups never wait for the registrations.
+	 */
+	private final HelpComponentsIndex helpIndex;
 
 	/**
 	 * Starts the help dialog for the given component if that component has been previously registered via
@@ -112,75 +156,173 @@ public class HelpManager {
 	 */
 	public boolean showHelpNow(Component guiItem) {
 		if (guiItem == null) return false;
-		for (ComponentWithHelp item : helpDialogs) {
-			if (guiItem == item.component) {
-				item.helpDialog.showNonModalHelpNow();
-				return true;
-			}
+		final HelpShower helpDialog = helpIndex.get(guiItem);
+		if (helpDialog == null) return parent != null && parent.showHelpNow(guiItem);
+		showHelp(helpDialog);
+		return true;
+	}
+
+	private int coalescingWindow = 300;
+	/** The help that was served last and when its trigger came, accessed only on the EDT. */
+	private HelpShower lastServedHelp = null;
+	private long lastServedTime = 0;
+
+	/**
+	 * Sets the window in which repeated triggers of the same help (e.g., from the key auto-repeat, or from impatient
+	 * users) are coalesced, default is 300 ms. A trigger is dropped if it resolves to the help that was served last,
+	 * and it comes within the window after the trigger that was served. Use 0 to serve every trigger.
+	 * Regardless of this window, a help whose window is open already is never opened again, it's only brought to front.
+	 * @param millis The coalescing window in milliseconds.
+	 */
+	public synchronized void setTriggerCoalescingWindow(final int millis) {
+		coalescingWindow = Math.max(millis, 0);
+	}
+
+	public synchronized int getTriggerCoalescingWindow() {
+		return coalescingWindow;
+	}
+
+	/**
+	 * Schedules the serving of the trigger on the EDT (if not there already), where it's either
+	 * coalesced with the previous triggers, or processed. The outcome is reported via {@link HelpMetrics#helpTriggered}.
+	 *
+	 * This is the entry point that's called after triggering the local help in the client application.
+	 */
+	private void triggerHelp() {
+		final long now = System.nanoTime();
+		if (SwingUtilities.isEventDispatchThread()) serveTrigger(now);
+		else SwingUtilities.invokeLater(() -> serveTrigger(now));
+	}
+
+	private void serveTrigger(final long triggerTime) {
+		final HelpShower helpDialog = processHelpKey();
+		if (helpDialog == null) {
+			metrics.helpTriggered(HelpMetrics.TriggerOutcome.NO_HELP);
+			return;
+		}
+		//NB: the window is measured from the served trigger, so a held key gets through again once per window
+		if (helpDialog == lastServedHelp
+				&& triggerTime - lastServedTime < TimeUnit.MILLISECONDS.toNanos(getTriggerCoalescingWindow())) {
+			metrics.helpTriggered(HelpMetrics.TriggerOutcome.COALESCED);
+			return;
 		}
-		return false;
+		lastServedHelp = helpDialog;
+		lastServedTime = triggerTime;
+
+		final boolean isOpen = helpDialog.isOpen();
+		showHelp(helpDialog);
+		metrics.helpTriggered(isOpen ? HelpMetrics.TriggerOutcome.ALREADY_OPEN : HelpMetrics.TriggerOutcome.SHOWN);
 	}
 
 	/**
-	 * Scans the registered GUI components to look for the first one under the mouse cursor.
+	 * Looks up the smallest registered GUI component under the mouse cursor.
 	 * The current state (visibility, position and size) of the components is considered,
-	 * as well as the current mouse position, naturally.
+	 * as well as the current mouse position (sampled only once per lookup), naturally.
 	 *
-	 * This is the entry point that's called after triggering the local help in the client application.
+	 * @return Help of the found component, or null if there's no such component.
 	 */
-	private void processHelpKey() {
-		for (ComponentWithHelp item : helpDialogs) {
-			//Enable to debug:
-			//System.out.println("Help: Considering component: " + item.component.getClass().getSimpleName()+", visible="+item.component.isShowing());
-			if (item.component.isShowing() && isCurrentMousePosOverComponent(item.component)) {
-				//Enable to debug:
-				//System.out.println("Would be now printing help for component: " + item.component.getClass().getSimpleName());
-				item.helpDialog.showNonModalHelpNow();
-				return;
+	private HelpShower processHelpKey() {
+		final HoverTracker tracker = hoverTracker;
+		if (tracker != null && tracker.isTracking()) {
+			//NB: the component under the pointer is known already
+			final HelpShower helpDialog = tracker.getHovered();
+			if (helpDialog != null || parent == null) {
+				metrics.helpKeyResolved(0, tracker.getCandidatesScanned(), helpDialog != null);
+				return helpDialog;
 			}
+			//NB: the parent's components are not tracked, they must be looked up
 		}
+
+		final PointerInfo pointer = MouseInfo.getPointerInfo();
+		if (pointer == null) return null; //NB: no mouse, no component under it
+
+		final Window focusedWindow = KeyboardFocusManager.getCurrentKeyboardFocusManager().getFocusedWindow();
+		final long start = System.nanoTime();
+		final HelpShower helpDialog = findHelpAt(pointer.getLocation(), focusedWindow);
+		metrics.helpKeyResolved(System.nanoTime() - start, helpIndex.getCandidatesScanned(), helpDialog != null);
+		return helpDialog;
 	}
 
-	private boolean isCurrentMousePosOverComponent(final Component component) {
-		final Point p = MouseInfo.getPointerInfo().getLocation();
-		final Point c = component.getLocationOnScreen();
-		p.translate( -c.x, -c.y ); //NB: the same as ".sub(component.corner)"
-		return !(p.x < 0 || p.y < 0 || p.x >= component.getWidth() || p.y >= component.getHeight());
+	private volatile HoverTracker hoverTracker = null;
+	private int hoverDwellTime = 400;
+
+	/**
+	 * Controls if the registered component under the mouse pointer shall be tracked (via one listener of all
+	 * mouse motion events of the application), and if its help shall be warmed up (see {@link HelpShower#warmUp()})
+	 * after the pointer rests over the component for {@link HelpManager#setHoverDwellTime(int)}, so that pressing
+	 * the help key shows the content right away. The help key is then also resolved from the tracked
+	 * component, not by polling the mouse pointer. It is disabled by default.
+	 * @param prefetch True to track the pointer and to warm up the helps.
+	 */
+	public synchronized void setPrefetchOnHover(final boolean prefetch) {
+		if (prefetch == (hoverTracker != null)) return;
+		if (prefetch) {
+			hoverTracker = new HoverTracker(helpIndex, hoverDwellTime);
+			hoverTracker.install();
+		} else {
+			hoverTracker.uninstall();
+			hoverTracker = null;
+		}
+	}
+
+	/** @param millis How long the mouse pointer must rest over a component before its help is warmed up. */
+	public synchronized void setHoverDwellTime(final int millis) {
+		hoverDwellTime = millis;
+		if (hoverTracker != null) hoverTracker.setDwellTime(millis);
+	}
+
+	private void showHelp(final HelpShower helpDialog) {
+		final long start = System.nanoTime();
+		helpDialog.showNonModalHelpNow();
+		metrics.helpShown(helpDialog, System.nanoTime() - start);
+	}
+
+	/**
+	 * @param screenPos Position in the screen coordinates, typically of the mouse pointer.
+	 * @param preferredRoot Root container (e.g., the focused window) to be consulted first, can be null.
+	 * @return Help of the smallest registered component showing at the given position, or null.
+	 */
+	HelpShower findHelpAt(final Point screenPos, final Component preferredRoot) {
+		final HelpShower helpDialog = helpIndex.findAt(screenPos, preferredRoot);
+		return helpDialog != null || parent == null ? helpDialog : parent.findHelpAt(screenPos, preferredRoot);
 	}
 
 	private void addComponent(final Component component, final HelpShower helpDialog) {
-		final int inArea = component.getWidth() * component.getHeight();
-		int index = -1;
-		for (ComponentWithHelp registeredHelp : helpDialogs) {
-			Component c = registeredHelp.component;
-			++index;
-
-			//NB: considering the _current_ area of the (previously) registered components
-			//    (not a stored area that might no longer be accurate),
-			//    against the _currently_ added component
-			int cArea = c.getWidth() * c.getHeight();
-			if (inArea < cArea) {
-				//'index' points now on the enlisted component that's larger
-				helpDialogs.add( index, new ComponentWithHelp(component,helpDialog) );
-				return;
-			}
-		}
-		//if we got here, there was no smaller registered component
-		helpDialogs.add(  new ComponentWithHelp(component,helpDialog) );
+		helpIndex.add(component, helpDialog);
+		HelpSearchIndex.obtain().addHelp(helpDialog);
+	}
+
+	/**
+	 * Opens the window to search through the pages of all registered help topics.
+	 * The topics are indexed in the background as they are registered, provided the indexing is enabled,
+	 * see {@link HelpSearchIndex#setEnabled(boolean)}.
+	 */
+	public void showSearchDialog() {
+		new HelpSearchDialog(HelpSearchIndex.obtain()).showNonModalHelpNow();
 	}
 
 	/**
 	 * Unregisters the given guiComponent together with its local help dialog.
-	 * It returns the status of the {@link List::remove()} operation.
+	 * Note that components are unregistered also automatically when they are removed from their window
+	 * (unless {@link HelpManager#setUnregisterOnRemoval(boolean)} says otherwise), or when they are garbage collected.
 	 * @param guiComponent The guiComponent that shall no longer provide a local help.
-	 * @return False if the given guiComponent was null or not present in the list, else True.
+	 * @return False if the given guiComponent was null or not registered, else True.
 	 */
 	public boolean unregisterComponentHelp(final Component guiComponent) {
-		try {
-			return helpDialogs.remove(guiComponent);
-		} catch (RuntimeException e) {
-			return false;
-		}
+		if (guiComponent == null) return false;
+		return helpIndex.remove(guiComponent);
+	}
+
+	/**
+	 * Controls if components shall be unregistered automatically when they leave their window,
+	 * that is, when they (or any of their parent containers) are removed from the window and are not added
+	 * into a window again while handling the same event (e.g., when moved to another container by Container.add()).
+	 * It is enabled by default. Disable it if the application re-uses GUI components,
+	 * e.g., if it's swapping the same panels in and out of its windows.
+	 * @param unregister True to unregister automatically.
+	 */
+	public void setUnregisterOnRemoval(final boolean unregister) {
+		helpIndex.unregisterOnRemoval = unregister;
 	}
 
 	// ==================================================================================================================
@@ -194,8 +336,12 @@ public class HelpManager {
 
 	public void registerComponentHelp(final Component guiComponent, final Path pathToLocalTopic,
 	                                  final String dialogTitle, final int startOnThisPageNumber) {
-		//TODO: add the first start page number into the LocalHelpShower
-		addComponent(guiComponent, new DefaultLocalHelpShower(pathToLocalTopic, dialogTitle));
+		addComponent(guiComponent, new DefaultLocalHelpShower(
+				new DirectoryPagesSource(pathToLocalTopic), dialogTitle, startOnThisPageNumber));
+	}
+
+	public void registerComponentHelp(final Component guiComponent, final HelpPagesSource localTopic, final String dialogTitle) {
+		addComponent(guiComponent, new DefaultLocalHelpShower(localTopic, dialogTitle));
 	}
 
 	public void registerComponentHelp(final Component guiComponent, final URL urlToRemoteTopic, final String dialogTitle) {
@@ -206,13 +352,74 @@ public class HelpManager {
 		addComponent(guiComponent, () -> openUrlInSystemBrowser(urlToRemoteTopic));
 	}
 
+	/**
+	 * Registers the local help for the given guiComponent, without resolving the topic now. The topic is
+	 * resolved, see {@link HelpManager#constructPathToLocalTopics(Class, String)}, and the help dialog
+	 * is created only when the help is requested for the first time. This makes the registration cheap
+	 * which is useful when many components are registered, e.g., when the application is starting.
+	 *
+	 * @param guiComponent The component for which the help is registered.
+	 * @param appClass The class whose resource folder holds the topic.
+	 * @param topic The sub-folder (in the resources folder) with the topic.
+	 * @param dialogTitle Title of the help dialog.
+	 */
+	public void registerComponentHelpLazily(final Component guiComponent, final Class<?> appClass,
+	                                        final String topic, final String dialogTitle) {
+		registerComponentHelpLazily(guiComponent, appClass, topic, dialogTitle, 0);
+	}
+
+	public void registerComponentHelpLazily(final Component guiComponent, final Class<?> appClass,
+	                                        final String topic, final String dialogTitle, final int startOnThisPageNumber) {
+		addComponent(guiComponent, LazyHelpShower.forLocalTopic(appClass, topic, dialogTitle, startOnThisPageNumber));
+	}
+
+	/**
+	 * Registers the remote help for the given guiComponent, without even parsing the URL now.
+	 * See {@link HelpManager#registerComponentHelpLazily(Component, Class, String, String)} for details.
+	 *
+	 * @param guiComponent The component for which the help is registered.
+	 * @param urlToRemoteTopic URL (as a plain text) of the remote help.
+	 * @param dialogTitle Title of the help dialog.
+	 */
+	public void registerComponentHelpLazily(final Component guiComponent, final String urlToRemoteTopic,
+	                                        final String dialogTitle) {
+		addComponent(guiComponent, LazyHelpShower.forRemoteTopic(urlToRemoteTopic, dialogTitle));
+	}
+
+	/**
+	 * Registers, in one go, all components from the given container (including the container itself)
+	 * that are listed in the given manifest. The container's hierarchy is walked only once.
+	 *
+	 * @param guiContainer The root of the GUI hierarchy to be searched for the listed components.
+	 * @param manifest The listing of components and their help dialogs.
+	 * @return The number of components that have been registered.
+	 */
+	public int registerComponentsHelp(final Container guiContainer, final HelpManifest manifest) {
+		int cnt = 0;
+		final Deque<Component> toBeVisited = new ArrayDeque<>();
+		toBeVisited.push(guiContainer);
+		while (!toBeVisited.isEmpty()) {
+			final Component c = toBeVisited.pop();
+			final HelpShower helpDialog = manifest.lookup(c);
+			if (helpDialog != null) {
+				addComponent(c, helpDialog);
+				++cnt;
+			}
+			if (c instanceof Container) {
+				for (Component child : ((Container)c).getComponents()) toBeVisited.push(child);
+			}
+		}
+		return cnt;
+	}
+
 
 	/**
 	 * An aider to obtain an absolute, local filesystem path to the resources folder of the provided class,
 	 * and this path is concatenated with a relative path to the 'topic'. Typically, a class is used that is responsible for
 	 * the functionality behind a GUI element for which {@link HelpManager#registerComponentHelp(Component, Path, String)}
 	 * is called, and that carries the help resources with it. The path to the class resources folder is yielded by
-	 * querying for {@code appClass.getResource(topic+"/1.html")}.
+	 * querying for {@code appClass.getResource(topic+"/1.html")}. If the resources are inside a JAR file,
+	 * the returned path is on the (opened on demand) ZIP file system of the JAR file.
 	 *
 	 * @param appClass The class whose resource folder is extracted.
 	 * @param topic The sub-folder in the resources folder is appended to the constructed path.
@@ -220,20 +427,34 @@ public class HelpManager {
 	*/
 	public static Path constructPathToLocalTopics(final Class<?> appClass, final String topic) {
 		try {
-			return Paths.get(appClass.getResource(topic+"/1.html").toURI()).getParent();
-		} catch (URISyntaxException | NullPointerException e) {
+			return toPath(appClass.getResource(topic+"/1.html").toURI()).getParent();
+		} catch (URISyntaxException | IOException | NullPointerException e) {
 			try {
 				System.err.println("Failed finding the local help "+appClass.getSimpleName()+"/"+topic
 						+", trying a default placeholder instead...");
-				return Paths.get(HelpManager.class.getResource("defaultDescription.html").toURI());
+				return toPath(HelpManager.class.getResource("defaultDescription.html").toURI());
 				//NB: notice the name of this framework...
-			} catch (URISyntaxException | NullPointerException ex) {
+			} catch (URISyntaxException | IOException | NullPointerException ex) {
 				throw new RuntimeException("Requested help ("
 						+appClass.getSimpleName()+"/"+topic+") as well as default substitute help was not found.");
 			}
 		}
 	}
 
+	/** Converts the URI to a path, opening the ZIP file system if the URI points inside a JAR file. */
+	static Path toPath(final URI uri) throws IOException {
+		try {
+			return Paths.get(uri);
+		} catch (FileSystemNotFoundException e) {
+			try {
+				FileSystems.newFileSystem(uri, Collections.emptyMap());
+			} catch (FileSystemAlreadyExistsException ignored) {
+				//NB: some other thread has just opened it
+			}
+			return Paths.get(uri);
+		}
+	}
+
 	/**
 	 * An aider to construct URL objects without the hassle of dealing with the potential {@link MalformedURLException}.
 	 * If invalid input is given, the methods return URL pointing at https://scijava.org/.
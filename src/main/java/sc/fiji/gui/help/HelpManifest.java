@@ -0,0 +1,138 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import javax.swing.JComponent;
+import java.awt.Component;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Declarative description of which GUI components shall show which help, to be used with
+ * {@link HelpManager#registerComponentsHelp(java.awt.Container, HelpManifest)}. The components
+ * are recognized by their names, see {@link Component#getName()}, or by the value of their client property
+ * {@link HelpManifest#CLIENT_PROPERTY_KEY}, see {@link JComponent#putClientProperty(Object, Object)}.
+ *
+ * The manifest can be also read from a properties file, where every line is of the form
+ * {@code componentName = topic}, with an optional {@code componentName.title = dialog title}.
+ * The topic is either an URL of a remote help (when it starts with "http://" or "https://"),
+ * or a local topic, which is resolved with {@link HelpManager#constructPathToLocalTopics(Class, String)}.
+ * The topics from the properties are resolved lazily, only when they are shown for the first time.
+ */
+public class HelpManifest {
+	/** The client property that can be used instead of the component's name. */
+	public static final String CLIENT_PROPERTY_KEY = "local-gui-help";
+
+	private final Map<String, HelpShower> helpDialogs = new HashMap<>();
+
+	public HelpManifest put(final String componentName, final HelpShower helpDialog) {
+		helpDialogs.put(componentName, helpDialog);
+		return this;
+	}
+
+	public HelpManifest put(final String componentName, final Path pathToLocalTopic, final String dialogTitle) {
+		return put(componentName, new DefaultLocalHelpShower(pathToLocalTopic, dialogTitle));
+	}
+
+	public HelpManifest put(final String componentName, final HelpPagesSource localTopic, final String dialogTitle) {
+		return put(componentName, new DefaultLocalHelpShower(localTopic, dialogTitle));
+	}
+
+	public HelpManifest put(final String componentName, final URL urlToRemoteTopic, final String dialogTitle) {
+		return put(componentName, new DefaultRemoteHelpShower(urlToRemoteTopic, dialogTitle));
+	}
+
+	/** @return Number of the components described in this manifest. */
+	public int size() {
+		return helpDialogs.size();
+	}
+
+	/**
+	 * @param guiComponent Component that is considered.
+	 * @return Help dialog listed for the given component, or null if it isn't listed.
+	 */
+	HelpShower lookup(final Component guiComponent) {
+		final String name = guiComponent.getName();
+		if (name != null) {
+			final HelpShower helpDialog = helpDialogs.get(name);
+			if (helpDialog != null) return helpDialog;
+		}
+		if (guiComponent instanceof JComponent) {
+			final Object key = ((JComponent)guiComponent).getClientProperty(CLIENT_PROPERTY_KEY);
+			if (key != null) return helpDialogs.get(key.toString());
+		}
+		return null;
+	}
+
+	// ==================================================================================================================
+	/**
+	 * Creates the manifest from the given properties, see {@link HelpManifest} for the expected format.
+	 * @param appClass The class whose resource folder holds the local topics.
+	 * @param manifest Pairs of component names and topics.
+	 * @return A new manifest.
+	 */
+	public static HelpManifest fromProperties(final Class<?> appClass, final Properties manifest) {
+		final HelpManifest m = new HelpManifest();
+		for (String name : manifest.stringPropertyNames()) {
+			if (name.endsWith(".title") && manifest.containsKey(name.substring(0, name.length()-6))) continue;
+
+			final String topic = manifest.getProperty(name).trim();
+			final String title = manifest.getProperty(name+".title", topic);
+			//NB: the topics are resolved only when they are shown for the first time
+			if (topic.startsWith("http://") || topic.startsWith("https://")) {
+				m.put(name, LazyHelpShower.forRemoteTopic(topic, title));
+			} else {
+				m.put(name, LazyHelpShower.forLocalTopic(appClass, topic, title, 0));
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * Creates the manifest from the properties file found in the resources of the given class.
+	 * @param appClass The class whose resource folder holds the manifest as well as the local topics.
+	 * @param manifestName The name of the properties file.
+	 * @return A new manifest.
+	 * @throws IOException If the manifest was not found or could not be read.
+	 */
+	public static HelpManifest fromResource(final Class<?> appClass, final String manifestName)
+	throws IOException {
+		try (InputStream is = appClass.getResourceAsStream(manifestName)) {
+			if (is == null) throw new IOException("Help manifest "+appClass.getSimpleName()+"/"+manifestName+" was not found.");
+			final Properties p = new Properties();
+			p.load(is);
+			return fromProperties(appClass, p);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import java.net.URL;
+
+/**
+ * Receiver of measurements of the local help, to be installed via {@link HelpManager#setMetrics(HelpMetrics)}.
+ * All methods do nothing by default, implement only those of interest. The methods are called
+ * directly from the measured code (also from background threads), so they should return quickly.
+ * See {@link FlightRecorderMetrics} for the implementation that emits JDK Flight Recorder events.
+ * All durations are in nanoseconds.
+ */
+public interface HelpMetrics {
+	/**
+	 * The help key was pressed and the component under the mouse pointer was looked up.
+	 * @param duration Time it took to look up the component.
+	 * @param candidatesScanned Number of registered components that were considered.
+	 * @param matched True if a component with help was found.
+	 */
+	default void helpKeyResolved(long duration, int candidatesScanned, boolean matched) {}
+
+	/**
+	 * The help was triggered, e.g., the help key was pressed, see {@link HelpManager#setTriggerCoalescingWindow(int)}.
+	 * @param outcome What came out of the trigger.
+	 */
+	default void helpTriggered(TriggerOutcome outcome) {}
+
+	enum TriggerOutcome {
+		/** The help was looked up and opened. */
+		SHOWN,
+		/** The help was looked up, and its already open window was only brought to front. */
+		ALREADY_OPEN,
+		/** No help was found for the component under the mouse pointer. */
+		NO_HELP,
+		/** The help was looked up, but the trigger was dropped as it came within the coalescing window after the served trigger of the same help. */
+		COALESCED
+	}
+
+	/**
+	 * The help was opened (or brought to front). Only the opening is measured, pages are loaded later.
+	 * @param helpDialog The help that was opened.
+	 * @param duration Time it took to open it.
+	 */
+	default void helpShown(HelpShower helpDialog, long duration) {}
+
+	/**
+	 * A page was loaded from its source.
+	 * @param topic Pages of the topic.
+	 * @param pageNo Page number of the page.
+	 * @param readingTime Time spent reading (and possibly fetching) the files of the page.
+	 * @param decodingTime Time spent decoding (and scaling) the image of the page.
+	 */
+	default void pageLoaded(HelpPagesSource topic, int pageNo, long readingTime, long decodingTime) {}
+
+	/**
+	 * A page was requested from the {@link HelpPagesCache}.
+	 * @param topic Pages of the topic.
+	 * @param pageNo Page number of the page.
+	 * @param hit True if it was cached, false if it had to be waited for until it's loaded.
+	 */
+	default void pageCacheLookup(HelpPagesSource topic, int pageNo, boolean hit) {}
+
+	/**
+	 * Remote content was requested from the {@link RemoteHelpCache}.
+	 * @param url URL of the content.
+	 * @param duration Time it took to provide the content (or to fail).
+	 * @param outcome How the content was provided.
+	 */
+	default void remoteFetched(URL url, long duration, FetchOutcome outcome) {}
+
+	enum FetchOutcome {
+		/** Served from the cache without contacting the server. */
+		CACHED,
+		/** Served from the cache after the server confirmed it's up-to-date. */
+		NOT_MODIFIED,
+		/** Downloaded from the server. */
+		DOWNLOADED,
+		/** Served from the cache because the server could not be reached. */
+		STALE,
+		/** Not available. */
+		FAILED
+	}
+
+	/** Metrics that ignore all measurements, installed by default. */
+	HelpMetrics NONE = new HelpMetrics() {};
+}
@@ -0,0 +1,737 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import javax.swing.Icon;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.html.HTMLDocument;
+import javax.swing.text.html.HTMLEditorKit;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.GraphicsConfiguration;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Shared cache of the loaded pages (the decoded image and the HTML text) of the local help topics.
+ * The pages are kept in the least-recently-used order, and the least recently used ones are
+ * evicted when the (approximate) size of all cached pages exceeds the memory budget.
+ * The evicted pages are, however, still softly referenced so that they can be re-used
+ * unless the JVM needed the memory meanwhile.
+ *
+ * Pages can be also prefetched, that is, loaded in the background by a small pool
+ * of (daemon) threads, so that they are readily available when they are shown later.
+ * Similarly, pages can be requested to be loaded in the background and handed over to
+ * the Event Dispatch Thread once they are available, which is how they should be obtained
+ * from within GUI code so that the GUI never waits for the (possibly slow) file system.
+ */
+public class HelpPagesCache {
+	private HelpPagesCache() {}
+
+	private static HelpPagesCache instance = null;
+
+	/** Returns the one and always the same instance of the pages cache. */
+	public static synchronized HelpPagesCache obtain() {
+		if (instance == null) {
+			instance = new HelpPagesCache();
+		}
+		return instance;
+	}
+
+	// ==================================================================================================================
+	/**
+	 * The area where the page image will be displayed, and the scale (pixels per unit) of its screen.
+	 * The area is rounded down to multiples of {@link Display#GRANULARITY} so that slightly
+	 * different areas share the same cached images.
+	 */
+	public static final class Display {
+		static final int GRANULARITY = 32;
+
+		/** No bounds on the size of the images, and no HiDPI scaling. */
+		public static final Display NATURAL = new Display(0, 0, 1.0);
+
+		/** The size of the display in (logical) units, 0 means unbounded. */
+		public final int width, height;
+		/** The number of (screen) pixels per (logical) unit. */
+		public final double scale;
+
+		public Display(final int width, final int height, final double scale) {
+			this.width = width > 0 ? Math.max(width / GRANULARITY, 1) * GRANULARITY : 0;
+			this.height = height > 0 ? Math.max(height / GRANULARITY, 1) * GRANULARITY : 0;
+			this.scale = scale > 0 ? scale : 1.0;
+		}
+
+		/**
+		 * @param c Component that shall display the page image.
+		 * @return The current (or, if not yet laid out, the preferred) size of the component
+		 *         and the scale of the screen the component is shown on.
+		 */
+		public static Display of(final Component c) {
+			final Dimension size = c.getWidth() > 0 && c.getHeight() > 0 ? c.getSize() : c.getPreferredSize();
+			final GraphicsConfiguration gc = c.getGraphicsConfiguration();
+			return new Display(size.width, size.height, gc != null ? gc.getDefaultTransform().getScaleX() : 1.0);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(width, height, scale);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Display)) return false;
+			final Display d = (Display)obj;
+			return width == d.width && height == d.height && scale == d.scale;
+		}
+	}
+
+	/** One page of a help topic. */
+	public static class Page {
+		/** Can be null if the image was not available. */
+		public final Icon image;
+		public final String html;
+		/**
+		 * The html text already parsed, to be shown via {@link javax.swing.JEditorPane#setDocument(Document)}
+		 * (which skips the parsing), or null if it could not be parsed. It may be shown in several
+		 * text panes at the same time, and it must not be modified.
+		 */
+		public final Document document;
+		/** True if there's no next page in the topic. */
+		public final boolean isLastPage;
+		/** Approximate memory footprints of the image and of the text, which both may be shared with other pages. */
+		final long imageBytes, textBytes;
+
+		/** NB: parses the html text, which is why pages should be created on the loading threads. */
+		Page(final PageImageIcon image, final String html, final boolean isLastPage) {
+			this(image, html, parseHtml(html), isLastPage);
+		}
+
+		Page(final PageImageIcon image, final String html, final Document document, final boolean isLastPage) {
+			this.image = image;
+			this.html = html;
+			this.document = document;
+			this.isLastPage = isLastPage;
+			this.imageBytes = image != null ? image.getBytes() : 0;
+			this.textBytes = (document != null ? 10L : 2L) * html.length();
+		}
+	}
+
+	static class PageKey {
+		final HelpPagesSource topic;
+		final int pageNo;
+		final Display display;
+
+		PageKey(final HelpPagesSource topic, final int pageNo, final Display display) {
+			this.topic = topic;
+			this.pageNo = pageNo;
+			this.display = display;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(topic, pageNo, display);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof PageKey)) return false;
+			final PageKey k = (PageKey)obj;
+			return pageNo == k.pageNo && topic.equals(k.topic) && display.equals(k.display);
+		}
+	}
+
+	private static class SoftPage extends SoftReference<Page> {
+		final PageKey key;
+		SoftPage(final PageKey key, final Page page, final ReferenceQueue<Page> queue) {
+			super(page, queue);
+			this.key = key;
+		}
+	}
+
+	private long memoryBudget = 64L << 20;
+	private long usedMemory = 0;
+	private final LinkedHashMap<PageKey, Page> pages = new LinkedHashMap<>(64, 0.75f, true);
+	private final Map<PageKey, SoftPage> evictedPages = new HashMap<>();
+	private final ReferenceQueue<Page> collectedPages = new ReferenceQueue<>();
+
+	/**
+	 * Sets the (approximate) amount of memory the cached pages can occupy, default is 64 MB.
+	 * Pages over this budget are only softly referenced.
+	 * @param bytes The memory budget in bytes.
+	 */
+	public synchronized void setMemoryBudget(final long bytes) {
+		memoryBudget = bytes;
+		evictOverBudget();
+	}
+
+	public synchronized long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * Returns the requested page, with the image in its natural size, see {@link HelpPagesCache#getPage(HelpPagesSource, int, Display)}.
+	 * @param topic Pages of the topic.
+	 * @param pageNo Page number of the page.
+	 * @return Never null, the text is a placeholder if the page could not be loaded.
+	 */
+	public Page getPage(final HelpPagesSource topic, final int pageNo) {
+		return getPage(topic, pageNo, Display.NATURAL);
+	}
+
+	/**
+	 * Returns the requested page, loading it (from the source of the topic) only if it's not cached.
+	 * If the page is just being prefetched, the prefetching is awaited.
+	 * @param topic Pages of the topic.
+	 * @param pageNo Page number of the page.
+	 * @param display The display the page image should fit into.
+	 * @return Never null, the text is a placeholder if the page could not be loaded.
+	 */
+	public Page getPage(final HelpPagesSource topic, final int pageNo, final Display display) {
+		final PageKey key = new PageKey(topic, pageNo, display);
+		final PageLoading loading;
+		synchronized (this) {
+			final Page page = getCachedPage(key);
+			HelpManager.metrics.pageCacheLookup(topic, pageNo, page != null);
+			if (page != null) return page;
+			loading = getOrCreateLoading(key, false);
+		}
+
+		//NB: runs the loading in this thread unless some other thread has started it already
+		loading.run();
+		try {
+			final Page page = loading.get();
+			//NB: null only if it was prefetching a page that doesn't exist
+			return page != null ? page : loadPage(key);
+		} catch (InterruptedException | ExecutionException e) {
+			//NB: keeps the interruption visible to the caller that is given the fall back content
+			if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+			return new Page(null, "FALL BACK CONTENT because failed loading the page "+pageNo+" of:<br/>"+topic, true);
+		}
+	}
+
+	/**
+	 * Requests the page to be loaded in the background, unless it's already cached or being loaded.
+	 * Nothing is loaded (and cached) if the page doesn't exist.
+	 * @param topic Pages of the topic.
+	 * @param pageNo Page number of the page.
+	 * @param display The display the page image should fit into.
+	 */
+	public synchronized void prefetchPage(final HelpPagesSource topic, final int pageNo, final Display display) {
+		final PageKey key = new PageKey(topic, pageNo, display);
+		if (pageNo < 1 || pages.containsKey(key) || loadings.containsKey(key)) return;
+		loader.execute( getOrCreateLoading(key, true) );
+	}
+
+	/**
+	 * Requests the page to be loaded in the background, and to be handed over to the given consumer,
+	 * which is executed on the Event Dispatch Thread (EDT). If the page is cached, the consumer is
+	 * (still) executed later on the EDT.
+	 * @param topic Pages of the topic.
+	 * @param pageNo Page number of the page.
+	 * @param display The display the page image should fit into.
+	 * @param whenLoaded The consumer of the loaded page.
+	 * @return Handle to cancel this request.
+	 */
+	public synchronized PendingPage requestPage(final HelpPagesSource topic, final int pageNo, final Display display,
+	                                            final Consumer<Page> whenLoaded) {
+		final PageKey key = new PageKey(topic, pageNo, display);
+		final PendingPage request = new PendingPage(whenLoaded);
+		final Page page = getCachedPage(key);
+		HelpManager.metrics.pageCacheLookup(topic, pageNo, page != null);
+		if (page != null) {
+			request.deliver(page);
+			return request;
+		}
+
+		PageLoading loading = loadings.get(key);
+		if (loading == null) {
+			loading = getOrCreateLoading(key, false);
+			loader.execute(loading);
+		}
+		loading.requests.add(request);
+		request.loading = loading;
+		return request;
+	}
+
+	/** Handle on the page that was requested but not yet handed over. */
+	public class PendingPage {
+		private final Consumer<Page> whenLoaded;
+		private volatile boolean cancelled = false;
+		private PageLoading loading = null;
+
+		PendingPage(final Consumer<Page> whenLoaded) {
+			this.whenLoaded = whenLoaded;
+		}
+
+		/**
+		 * The page will not be handed over. If nobody else is waiting for the page,
+		 * and it has not yet started loading, the loading is cancelled too.
+		 */
+		public void cancel() {
+			cancelled = true;
+			synchronized (HelpPagesCache.this) {
+				if (loading == null) return;
+				loading.requests.remove(this);
+				if (loading.requests.isEmpty() && !loading.isPrefetch && !loading.started) loading.cancel(false);
+				loading = null;
+			}
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		void deliver(final Page page) {
+			SwingUtilities.invokeLater(() -> {
+				if (!cancelled) whenLoaded.accept(page);
+			});
+		}
+	}
+
+	private class PageLoading extends FutureTask<Page> {
+		final PageKey key;
+		final boolean isPrefetch;
+		final List<PendingPage> requests = new ArrayList<>(2);
+		boolean started = false;
+
+		PageLoading(final PageKey key, final boolean isPrefetch) {
+			super(() -> isPrefetch && !hasPage(key.topic, key.pageNo) ? null : loadPage(key));
+			this.key = key;
+			this.isPrefetch = isPrefetch;
+		}
+
+		@Override
+		public void run() {
+			synchronized (HelpPagesCache.this) {
+				started = true;
+			}
+			super.run();
+		}
+
+		@Override
+		protected void done() {
+			Page page;
+			try {
+				page = get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				page = null;
+			} catch (ExecutionException | CancellationException e) {
+				page = null;
+			}
+
+			final List<PendingPage> waiting;
+			synchronized (HelpPagesCache.this) {
+				//NB: the loading is no longer registered if its page was invalidated meanwhile, the page is likely stale then
+				if (loadings.remove(key, this) && page != null) putPage(key, page);
+				if (requests.isEmpty()) return;
+				waiting = new ArrayList<>(requests);
+				requests.clear();
+			}
+
+			//NB: null if it was prefetching a page that doesn't exist, or if it failed
+			if (page == null) page = loadPage(key);
+			for (PendingPage r : waiting) r.deliver(page);
+		}
+	}
+
+	private final Map<PageKey, PageLoading> loadings = new HashMap<>();
+	private final ExecutorService loader = Executors.newFixedThreadPool(2, r -> {
+		final Thread t = new Thread(r, "local-gui-help pages loader");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private PageLoading getOrCreateLoading(final PageKey key, final boolean isPrefetch) {
+		PageLoading loading = loadings.get(key);
+		if (loading == null) {
+			loading = new PageLoading(key, isPrefetch);
+			loadings.put(key, loading);
+		}
+		return loading;
+	}
+
+	/**
+	 * @param topic Pages of the topic.
+	 * @param pageNo Page number of the page.
+	 * @param display The display the page image should fit into.
+	 * @return The requested page if it is cached, else null.
+	 */
+	public Page getCachedPage(final HelpPagesSource topic, final int pageNo, final Display display) {
+		final Page page = getCachedPage(new PageKey(topic, pageNo, display));
+		//NB: misses are reported only if the page is then really requested
+		if (page != null) HelpManager.metrics.pageCacheLookup(topic, pageNo, true);
+		return page;
+	}
+
+	/**
+	 * Drops all cached pages, as well as the interned images and texts and the read manifests,
+	 * so that the pages are loaded as if for the first time.
+	 */
+	public synchronized void clear() {
+		pages.clear();
+		evictedPages.clear();
+		assetUsers.clear();
+		usedMemory = 0;
+		images.clear();
+		texts.clear();
+		synchronized (manifests) {
+			manifests.clear();
+		}
+	}
+
+	/**
+	 * Drops the given pages of the topic, e.g., because their files have been changed, so that they are
+	 * loaded anew when requested next time. The pages being loaded right now will not be cached.
+	 * The manifest of the topic is no longer consulted afterwards, see {@link HelpPagesCache#ignoreManifest(HelpPagesSource)}.
+	 * @param topic Pages of the topic.
+	 * @param pageNos Page numbers of the pages, or null to drop all pages of the topic.
+	 */
+	public void invalidate(final HelpPagesSource topic, final Collection<Integer> pageNos) {
+		final Predicate<PageKey> isInvalid = k -> k.topic.equals(topic) && (pageNos == null || pageNos.contains(k.pageNo));
+		synchronized (this) {
+			final Iterator<Map.Entry<PageKey, Page>> it = pages.entrySet().iterator();
+			while (it.hasNext()) {
+				final Map.Entry<PageKey, Page> e = it.next();
+				if (!isInvalid.test(e.getKey())) continue;
+				it.remove();
+				discharge(e.getValue());
+			}
+			evictedPages.keySet().removeIf(isInvalid);
+			loadings.keySet().removeIf(isInvalid);
+		}
+		//NB: the files have changed, so the page count and the hashes listed in the manifest are likely outdated
+		ignoreManifest(topic);
+	}
+
+	synchronized Page getCachedPage(final PageKey key) {
+		Page page = pages.get(key);
+		if (page != null) return page;
+
+		//maybe it's still softly available?
+		purgeCollected();
+		final SoftPage softPage = evictedPages.remove(key);
+		page = softPage != null ? softPage.get() : null;
+		if (page != null) putPage(key, page);
+		return page;
+	}
+
+	synchronized void putPage(final PageKey key, final Page page) {
+		final Page prev = pages.put(key, page);
+		if (prev != null) discharge(prev);
+		charge(page);
+		evictedPages.remove(key);
+		evictOverBudget();
+	}
+
+	private void evictOverBudget() {
+		final Iterator<Map.Entry<PageKey, Page>> it = pages.entrySet().iterator();
+		while (usedMemory > memoryBudget && it.hasNext()) {
+			final Map.Entry<PageKey, Page> lru = it.next();
+			it.remove();
+			discharge(lru.getValue());
+			evictedPages.put(lru.getKey(), new SoftPage(lru.getKey(), lru.getValue(), collectedPages));
+		}
+	}
+
+	/**
+	 * The number of cached pages that hold the (possibly shared) images and texts, so that the memory
+	 * of an image or text is counted only once no matter how many pages show it.
+	 */
+	private final Map<Object, Integer> assetUsers = new IdentityHashMap<>();
+
+	private void charge(final Page page) {
+		if (page.image != null && assetUsers.merge(page.image, 1, Integer::sum) == 1) usedMemory += page.imageBytes;
+		final Object text = page.document != null ? page.document : page.html;
+		if (assetUsers.merge(text, 1, Integer::sum) == 1) usedMemory += page.textBytes;
+	}
+
+	private void discharge(final Page page) {
+		if (page.image != null && assetUsers.computeIfPresent(page.image, (a, n) -> n > 1 ? n-1 : null) == null) {
+			usedMemory -= page.imageBytes;
+		}
+		final Object text = page.document != null ? page.document : page.html;
+		if (assetUsers.computeIfPresent(text, (a, n) -> n > 1 ? n-1 : null) == null) usedMemory -= page.textBytes;
+	}
+
+	private void purgeCollected() {
+		SoftPage ref;
+		while ((ref = (SoftPage)collectedPages.poll()) != null) {
+			evictedPages.remove(ref.key, ref);
+		}
+	}
+
+	// ==================================================================================================================
+	/**
+	 * All documents are created by this kit, and thus share its (default) style sheet as their base
+	 * style sheet, see {@link HTMLEditorKit#createDefaultDocument()}.
+	 */
+	private static final HTMLEditorKit HTML_KIT = new HTMLEditorKit();
+
+	/** Key of the document property with the html text the document was parsed from. */
+	static final String HTML_SOURCE_PROPERTY = "local-gui-help.html";
+
+	/** @return The parsed html text, or null if it could not be parsed. */
+	static Document parseHtml(final String html) {
+		final HTMLDocument doc = (HTMLDocument)HTML_KIT.createDefaultDocument();
+		//NB: the whole text is parsed right now, not gradually while being shown
+		doc.setAsynchronousLoadPriority(-1);
+		try {
+			HTML_KIT.read(new StringReader(html), doc, 0);
+			doc.putProperty(HTML_SOURCE_PROPERTY, html);
+			return doc;
+		} catch (IOException | BadLocationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	// ==================================================================================================================
+	private final Map<HelpPagesSource, Optional<TopicManifest>> manifests = new HashMap<>();
+	private final Set<HelpPagesSource> outdatedManifests = new HashSet<>();
+
+	/**
+	 * Stops consulting the manifest of the topic, e.g., because the files of the topic are being edited, so that
+	 * the pages are probed and the content is hashed as it is read, just like for topics without a manifest.
+	 * @param topic Pages of the topic.
+	 */
+	public void ignoreManifest(final HelpPagesSource topic) {
+		synchronized (manifests) {
+			outdatedManifests.add(topic);
+			manifests.remove(topic);
+		}
+	}
+
+	/**
+	 * @param topic Pages of the topic.
+	 * @return The manifest of the topic, or null if the topic has no manifest.
+	 */
+	public TopicManifest getManifest(final HelpPagesSource topic) {
+		synchronized (manifests) {
+			if (outdatedManifests.contains(topic)) return null;
+			final Optional<TopicManifest> known = manifests.get(topic);
+			if (known != null) return known.orElse(null);
+		}
+		//NB: read without holding the lock, so that a slow topic does not block the lookups of the other topics
+		final Optional<TopicManifest> read = Optional.ofNullable(TopicManifest.read(topic));
+		synchronized (manifests) {
+			//NB: the topic may have been edited meanwhile, then the manifest just read must not be used
+			if (outdatedManifests.contains(topic)) return null;
+			final Optional<TopicManifest> known = manifests.putIfAbsent(topic, read);
+			return (known != null ? known : read).orElse(null);
+		}
+	}
+
+	/** Consults the manifest of the topic, or probes the topic if it has no manifest. */
+	boolean hasPage(final HelpPagesSource topic, final int pageNo) {
+		final TopicManifest m = getManifest(topic);
+		return m != null ? pageNo >= 1 && pageNo <= m.getNumberOfPages() : pageExists(topic, pageNo);
+	}
+
+	/** Probes the topic for any file of the given page. */
+	static boolean pageExists(final HelpPagesSource topic, final int pageNo) {
+		return pageFileExists(topic, pageNo + ".html") || pageFileExists(topic, pageNo + ".png");
+	}
+
+	/** @return True if the file, or a pointer to its remote copy (the ".url" file), exists. */
+	static boolean pageFileExists(final HelpPagesSource topic, final String fileName) {
+		return topic.exists(fileName) || topic.exists(fileName + POINTER_SUFFIX);
+	}
+
+	/** The suffix of files that contain only an URL of the actual content. */
+	static final String POINTER_SUFFIX = ".url";
+
+	/**
+	 * Reads the file of the topic. If the file is not available but there's a pointer file (e.g., "1.png.url"
+	 * instead of "1.png"), the content is fetched from the URL found in the pointer file. Web content is
+	 * fetched via (and kept in) the {@link RemoteHelpCache}, so it is downloaded only on the first use.
+	 * @param topic Pages of the topic.
+	 * @param fileName Name of the file within the topic, e.g., "1.png".
+	 * @return The complete content of the file.
+	 * @throws IOException If neither the file nor the remote content is available.
+	 */
+	static ByteBuffer readPageFile(final HelpPagesSource topic, final String fileName) throws IOException {
+		if (topic.exists(fileName) || !topic.exists(fileName + POINTER_SUFFIX)) return topic.read(fileName);
+
+		final String pointer = Charset.defaultCharset().decode(topic.read(fileName + POINTER_SUFFIX)).toString().trim();
+		final URL url = new URL(pointer.split("\\s+", 2)[0]);
+		final String protocol = url.getProtocol();
+		if (protocol.equals("http") || protocol.equals("https")) {
+			return ByteBuffer.wrap(Files.readAllBytes( RemoteHelpCache.obtain().fetch(url) ));
+		}
+		try (InputStream is = url.openStream()) {
+			final ByteArrayOutputStream content = new ByteArrayOutputStream();
+			final byte[] chunk = new byte[1 << 16];
+			int len;
+			while ((len = is.read(chunk)) > 0) content.write(chunk, 0, len);
+			return ByteBuffer.wrap(content.toByteArray());
+		}
+	}
+
+	Page loadPage(final PageKey key) {
+		final long start = System.nanoTime();
+		final long[] decodingTime = { 0 };
+
+		PageImageIcon image = null;
+		final String imageFileName = PageImageIcon.imageFileName(key.topic, key.pageNo, key.display);
+		if (imageFileName != null) {
+			try {
+				image = loadImage(key.topic, imageFileName, key.display, decodingTime);
+			} catch (IOException | RuntimeException e) {
+				System.err.println("Failed reading the image "+key.topic.describe(imageFileName)+": "+e.getMessage());
+			}
+		}
+
+		final Page page = loadText(key.topic, key.pageNo + ".html", image, !hasPage(key.topic, key.pageNo+1));
+		HelpManager.metrics.pageLoaded(key.topic, key.pageNo, System.nanoTime() - start - decodingTime[0], decodingTime[0]);
+		return page;
+	}
+
+	// ==================================================================================================================
+	/** Key of a decoded image: the hash of the image file, and how it was decoded. */
+	private static class ImageKey {
+		final String hash;
+		final boolean isHiDpi;
+		final Display display;
+
+		ImageKey(final String hash, final String fileName, final Display display) {
+			this.hash = hash;
+			this.isHiDpi = fileName.endsWith("@2x.png");
+			this.display = display;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(hash, isHiDpi, display);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof ImageKey)) return false;
+			final ImageKey k = (ImageKey)obj;
+			return isHiDpi == k.isHiDpi && hash.equals(k.hash) && display.equals(k.display);
+		}
+	}
+
+	/** The decoded images and parsed texts, identified by the hashes of their files, shared by all topics. */
+	private final ContentInterner<ImageKey, PageImageIcon> images = new ContentInterner<>();
+	private final ContentInterner<String, Document> texts = new ContentInterner<>();
+
+	/**
+	 * Returns the decoded image, which is shared with all pages (of any topic) whose image files have the same
+	 * content. The image file is not even read if the topic manifest tells that such image is decoded already.
+	 * @param topic Pages of the topic.
+	 * @param fileName Name of the image file, see {@link PageImageIcon#imageFileName(HelpPagesSource, int, Display)}.
+	 * @param display The display the image should fit into.
+	 * @param decodingTime If not null, its first element is increased by the time spent decoding.
+	 * @return The decoded image.
+	 * @throws IOException If the image could not be read or decoded.
+	 */
+	PageImageIcon loadImage(final HelpPagesSource topic, final String fileName, final Display display,
+	                        final long[] decodingTime) throws IOException {
+		final String listedHash = getListedHash(topic, fileName);
+		if (listedHash != null) {
+			final PageImageIcon image = images.get(new ImageKey(listedHash, fileName, display));
+			if (image != null) return image;
+		}
+
+		//NB: the content is identified by what was really read, the listed hash is only a shortcut to skip the reading
+		final ByteBuffer content = readPageFile(topic, fileName);
+		final ImageKey key = new ImageKey(TopicManifest.sha1(content), fileName, display);
+		final PageImageIcon image = images.get(key);
+		if (image != null) return image;
+
+		final long decodingStart = System.nanoTime();
+		final PageImageIcon decoded = PageImageIcon.decode(content, fileName, display, topic);
+		if (decodingTime != null) decodingTime[0] += System.nanoTime() - decodingStart;
+		return images.intern(key, decoded);
+	}
+
+	/** Creates the page with the text, whose parsed document is shared with all pages with the same text. */
+	private Page loadText(final HelpPagesSource topic, final String fileName, final PageImageIcon image,
+	                      final boolean isLastPage) {
+		final String listedHash = getListedHash(topic, fileName);
+		Document document = listedHash != null ? texts.get(listedHash) : null;
+		if (document == null) {
+			final ByteBuffer content;
+			try {
+				content = readPageFile(topic, fileName);
+			} catch (IOException e) {
+				return new Page(image, "FALL BACK CONTENT because failed opening the file:<br/>"+topic.describe(fileName), isLastPage);
+			}
+			final String hash = TopicManifest.sha1(content);
+			document = texts.get(hash);
+			if (document == null) {
+				//NB: the same charset as in DefaultLocalHelpShower.readCompleteFile()
+				final String html = Charset.defaultCharset().decode(content).toString();
+				final Document parsed = parseHtml(html);
+				if (parsed == null) return new Page(image, html, null, isLastPage);
+				document = texts.intern(hash, parsed);
+			}
+		}
+		return new Page(image, (String)document.getProperty(HTML_SOURCE_PROPERTY), document, isLastPage);
+	}
+
+	/**
+	 * @return The hash of the file as listed in the topic manifest, or null if the topic has no manifest or
+	 *         the file is not listed (e.g., it's only pointed to, so its content is not known in advance).
+	 */
+	private String getListedHash(final HelpPagesSource topic, final String fileName) {
+		final TopicManifest m = getManifest(topic);
+		return m != null ? m.getHash(fileName) : null;
+	}
+}
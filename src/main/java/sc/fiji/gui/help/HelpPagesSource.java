@@ -0,0 +1,88 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Provider of the files (pages) of one local help topic, e.g., "1.html" and "1.png".
+ * The topic can be stored in a folder (also inside a JAR file), see {@link DirectoryPagesSource},
+ * or in a packed bundle, see {@link HelpBundle}. Sources of the same topic must be equal
+ * (and have the same hash code), the sources are used as keys of the caches.
+ */
+public interface HelpPagesSource {
+	/**
+	 * @param fileName Name of the file within the topic, e.g., "1.html".
+	 * @return True if the file exists.
+	 */
+	boolean exists(String fileName);
+
+	/**
+	 * @param fileName Name of the file within the topic, e.g., "1.html".
+	 * @return The complete content of the file. The buffer need not be backed by an array (e.g.,
+	 *         it can be a direct view into a memory-mapped file) and must not be modified.
+	 * @throws IOException If the file doesn't exist or couldn't be read.
+	 */
+	ByteBuffer read(String fileName) throws IOException;
+
+	/**
+	 * @param fileName Name of the file within the topic, e.g., "1.html".
+	 * @return Human-readable location of the file, e.g., for error messages.
+	 */
+	default String describe(String fileName) {
+		return this + "/" + fileName;
+	}
+
+	/** Wraps the given buffer into a stream, without copying the content. */
+	static InputStream asStream(final ByteBuffer buffer) {
+		final ByteBuffer buf = buffer.duplicate();
+		return new InputStream() {
+			@Override
+			public int read() {
+				return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) {
+				if (len == 0) return 0;
+				if (!buf.hasRemaining()) return -1;
+				len = Math.min(len, buf.remaining());
+				buf.get(b, off, len);
+				return len;
+			}
+
+			@Override
+			public int available() {
+				return buf.remaining();
+			}
+		};
+	}
+}
@@ -0,0 +1,143 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+
+/**
+ * Window to search through the pages of all registered help topics, see {@link HelpSearchIndex}.
+ * The results are updated as the query is being typed, and the selected result opens the help on the found page.
+ */
+public class HelpSearchDialog implements HelpShower {
+	final HelpSearchIndex index;
+	static final int MAX_HITS = 50;
+
+	HelpSearchDialog(final HelpSearchIndex index) {
+		this.index = index;
+	}
+
+	@Override
+	public void showNonModalHelpNow() {
+		if (HelpWindows.obtain().bringToFront(HelpSearchDialog.class) != null) return;
+
+		final JTextField queryField = new JTextField(40);
+		final DefaultListModel<HelpSearchIndex.Hit> hitsModel = new DefaultListModel<>();
+		final JList<HelpSearchIndex.Hit> hitsList = new JList<>(hitsModel);
+		hitsList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		hitsList.setCellRenderer(new HitRenderer());
+		final JLabel statusLine = new JLabel(index.size()+" pages indexed");
+
+		queryField.getDocument().addDocumentListener(new DocumentListener() {
+			@Override
+			public void insertUpdate(DocumentEvent e) { search(queryField.getText(), hitsModel, hitsList, statusLine); }
+			@Override
+			public void removeUpdate(DocumentEvent e) { search(queryField.getText(), hitsModel, hitsList, statusLine); }
+			@Override
+			public void changedUpdate(DocumentEvent e) {}
+		});
+		queryField.addActionListener((l) -> showSelected(hitsList));
+		queryField.addKeyListener(new KeyAdapter() {
+			@Override
+			public void keyPressed(KeyEvent e) {
+				if (e.getKeyCode() == KeyEvent.VK_DOWN && !hitsModel.isEmpty()) hitsList.requestFocusInWindow();
+			}
+		});
+		hitsList.addKeyListener(new KeyAdapter() {
+			@Override
+			public void keyPressed(KeyEvent e) {
+				if (e.getKeyCode() == KeyEvent.VK_ENTER) showSelected(hitsList);
+			}
+		});
+		hitsList.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				if (e.getClickCount() == 2) showSelected(hitsList);
+			}
+		});
+
+		final JScrollPane hitsPane = new JScrollPane(hitsList);
+		hitsPane.setPreferredSize(new Dimension(600, 400));
+
+		final JPanel contentPane = new JPanel(new BorderLayout(5,5));
+		contentPane.setBorder(BorderFactory.createEmptyBorder(5,5,5,5));
+		contentPane.add(queryField, BorderLayout.NORTH);
+		contentPane.add(hitsPane, BorderLayout.CENTER);
+		contentPane.add(statusLine, BorderLayout.SOUTH);
+
+		JFrame f = new JFrame("Search help");
+		f.setContentPane(contentPane);
+		f.pack();
+		f.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+		f.setVisible(true);
+		HelpWindows.obtain().register(HelpSearchDialog.class, f);
+	}
+
+	void search(final String query, final DefaultListModel<HelpSearchIndex.Hit> hitsModel,
+	            final JList<HelpSearchIndex.Hit> hitsList, final JLabel statusLine) {
+		final long start = System.nanoTime();
+		final List<HelpSearchIndex.Hit> hits = index.search(query, MAX_HITS);
+		final long duration = (System.nanoTime() - start) / 1000000;
+
+		hitsModel.clear();
+		for (HelpSearchIndex.Hit h : hits) hitsModel.addElement(h);
+		if (!hits.isEmpty()) hitsList.setSelectedIndex(0);
+		statusLine.setText(query.trim().isEmpty()
+				? index.size()+" pages indexed"
+				: hits.size()+(hits.size() == MAX_HITS ? " best" : "")+" results, found in "+duration+" ms");
+	}
+
+	void showSelected(final JList<HelpSearchIndex.Hit> hitsList) {
+		final HelpSearchIndex.Hit hit = hitsList.getSelectedValue();
+		if (hit != null) hit.show();
+	}
+
+	@SuppressWarnings("serial")
+	static class HitRenderer extends DefaultListCellRenderer {
+		@Override
+		public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+		                                              boolean isSelected, boolean cellHasFocus) {
+			final HelpSearchIndex.Hit hit = (HelpSearchIndex.Hit)value;
+			final String text = "<html><b>"+escape(hit.title)+"</b> &mdash; page "+hit.pageNo
+					+"<br/><small>"+escape(hit.summary)+"</small></html>";
+			return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+		}
+
+		static String escape(final String text) {
+			return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+		}
+	}
+}
@@ -0,0 +1,621 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import javax.swing.text.html.HTMLEditorKit;
+import javax.swing.text.html.parser.ParserDelegator;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Full-text (inverted) index of the text pages ("N.html") of all help topics registered with the {@link HelpManager},
+ * of the local topics as well as of the remote topics that are available in the {@link RemoteHelpCache}.
+ * Indexing is opt-in, see {@link HelpSearchIndex#setEnabled(boolean)}. The topics are then indexed in the background,
+ * as they are being registered, and the index is persisted so that only new or changed pages are (re)indexed
+ * on the next start of the application; topics not registered for a long time are dropped from it. Results
+ * of {@link HelpSearchIndex#search(String, int)} are ranked with the BM25 scoring, and only pages
+ * of the topics registered in the running application are returned.
+ */
+public class HelpSearchIndex {
+	HelpSearchIndex(final Path indexFile) {
+		this.indexFile = indexFile;
+	}
+
+	private static HelpSearchIndex instance = null;
+
+	/** Returns the one and always the same instance of the search index. */
+	public static synchronized HelpSearchIndex obtain() {
+		if (instance == null) {
+			instance = new HelpSearchIndex(
+					Paths.get(System.getProperty("user.home"), ".local-gui-help", "search.index") );
+		}
+		return instance;
+	}
+
+	// ==================================================================================================================
+	private Path indexFile;
+
+	public synchronized void setIndexFile(final Path file) {
+		indexFile = file;
+	}
+
+	public synchronized Path getIndexFile() {
+		return indexFile;
+	}
+
+	/** One page of a topic. */
+	private static class Doc {
+		final String topicKey;
+		final String title;
+		final int pageNo;
+		final String hash;
+		final int length;
+		final String summary;
+		boolean removed = false;
+
+		Doc(final String topicKey, final String title, final int pageNo, final String hash,
+		    final int length, final String summary) {
+			this.topicKey = topicKey;
+			this.title = title;
+			this.pageNo = pageNo;
+			this.hash = hash;
+			this.length = length;
+			this.summary = summary;
+		}
+	}
+
+	/** Pages (and the frequencies in them) of one term. */
+	private static class Postings {
+		int[] docIds = new int[4];
+		int[] freqs = new int[4];
+		int size = 0;
+
+		void add(final int docId, final int freq) {
+			if (size == docIds.length) {
+				docIds = Arrays.copyOf(docIds, 2*size);
+				freqs = Arrays.copyOf(freqs, 2*size);
+			}
+			docIds[size] = docId;
+			freqs[size] = freq;
+			++size;
+		}
+	}
+
+	private final List<Doc> docs = new ArrayList<>();
+	private final Map<String, Map<Integer, Integer>> docIdsOfTopics = new HashMap<>();
+	private final TreeMap<String, Postings> terms = new TreeMap<>();
+	private long totalLength = 0;
+	private int liveDocs = 0;
+	private int removedDocs = 0;
+
+	/** Topics registered in the running application, which are those that can be opened from the search results. */
+	private final Map<String, HelpShower> openedBy = new HashMap<>();
+	/** When the topics were last registered (in this or previous sessions), persisted with the index. */
+	private final Map<String, Long> lastSeen = new HashMap<>();
+	/** For how long the pages of a topic are kept in the index after the topic was last registered. */
+	static final long TOPIC_EXPIRY = 90L * 24L * 60L * 60L * 1000L;
+
+	// ==================================================================================================================
+	private final ConcurrentLinkedQueue<HelpShower> pendingHelps = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean indexingScheduled = new AtomicBoolean(false);
+	private final ExecutorService indexer = Executors.newSingleThreadExecutor(r -> {
+		final Thread t = new Thread(r, "local-gui-help search indexer");
+		t.setDaemon(true);
+		t.setPriority(Thread.MIN_PRIORITY);
+		return t;
+	});
+
+	//NB: accessed only from the indexer thread
+	private boolean loaded = false;
+	private final Set<HelpShower> seenHelps = Collections.newSetFromMap(new WeakHashMap<>());
+	private final Set<String> checkedTopics = new HashSet<>();
+
+	private volatile boolean enabled = Boolean.getBoolean("local-gui-help.search-index");
+
+	/**
+	 * Enables or disables (default) the indexing of the registered helps. Only the helps registered while
+	 * the indexing is enabled are indexed (and can be found), disabling stops indexing the newly registered helps.
+	 * @param enable True to index the helps in the background and to persist the index.
+	 */
+	public void setEnabled(final boolean enable) {
+		enabled = enable;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Queues the help for indexing in the background, if indexing is enabled. It is cheap to be called for every
+	 * registered component, the same help (or another help of the same topic) is indexed only once.
+	 * @param helpDialog The help whose topic shall be indexed.
+	 */
+	public void addHelp(final HelpShower helpDialog) {
+		if (!enabled) return;
+		pendingHelps.add(helpDialog);
+		if (indexingScheduled.compareAndSet(false, true)) indexer.execute(this::indexPendingHelps);
+	}
+
+	private void indexPendingHelps() {
+		indexingScheduled.set(false);
+		if (!loaded) {
+			load();
+			loaded = true;
+		}
+
+		boolean changed = false;
+		HelpShower h;
+		while ((h = pendingHelps.poll()) != null) {
+			if (!seenHelps.add(h)) continue;
+			try {
+				changed |= indexHelp(h);
+			} catch (RuntimeException e) {
+				System.err.println("Failed indexing the help "+h+": "+e.getMessage());
+			}
+		}
+		if (changed) save();
+	}
+
+	/** @return True if the index has changed. */
+	private boolean indexHelp(final HelpShower h) {
+		if (h instanceof LazyHelpShower) {
+			//NB: the lazy help is not resolved just for the sake of indexing, only its topic is located
+			final LazyHelpShower lazy = (LazyHelpShower)h;
+			final HelpShower resolved = lazy.resolved();
+			if (resolved != null) return indexHelp(resolved);
+			if (lazy.localPages != null) return indexLocalTopic(lazy.localPages.get(), lazy.dialogTitle, lazy);
+			if (lazy.remoteUrl != null) return indexRemoteTopic(lazy.remoteUrl.get(), lazy.dialogTitle, lazy);
+			return false;
+		}
+		if (h instanceof DefaultLocalHelpShower) {
+			final DefaultLocalHelpShower l = (DefaultLocalHelpShower)h;
+			return indexLocalTopic(l.pages, l.dialogTitle, l);
+		}
+		if (h instanceof DefaultRemoteHelpShower) {
+			final DefaultRemoteHelpShower r = (DefaultRemoteHelpShower)h;
+			return indexRemoteTopic(r.urlToRemoteHelp, r.dialogTitle, r);
+		}
+		return false; //NB: other helps have no pages to be indexed
+	}
+
+	private boolean indexLocalTopic(final HelpPagesSource topic, final String title, final HelpShower helpDialog) {
+		final String topicKey = topic.describe("");
+		synchronized (this) {
+			openedBy.putIfAbsent(topicKey, helpDialog);
+			lastSeen.put(topicKey, System.currentTimeMillis());
+		}
+		if (!checkedTopics.add(topicKey)) return false;
+
+		final TopicManifest manifest = HelpPagesCache.obtain().getManifest(topic);
+		boolean changed = false;
+		int pageNo = 1;
+		for (; manifest != null ? pageNo <= manifest.getNumberOfPages() : HelpPagesCache.pageExists(topic, pageNo); ++pageNo) {
+			//NB: pointers to remote pages are not fetched just for the sake of indexing
+			final String fileName = pageNo + ".html";
+			if (!topic.exists(fileName)) continue;
+			try {
+				ByteBuffer content = null;
+				String hash = manifest != null ? manifest.getHash(fileName) : null;
+				if (hash == null) {
+					content = topic.read(fileName);
+					hash = TopicManifest.sha1(content);
+				}
+				if (isIndexed(topicKey, pageNo, hash)) continue;
+				if (content == null) content = topic.read(fileName);
+				indexPage(topicKey, title, pageNo, hash, htmlToText(Charset.defaultCharset().decode(content.duplicate()).toString()));
+				changed = true;
+			} catch (IOException e) {
+				System.err.println("Failed indexing "+topic.describe(fileName)+": "+e.getMessage());
+			}
+		}
+		return removePagesFrom(topicKey, pageNo) || changed;
+	}
+
+	private boolean indexRemoteTopic(final URL url, final String title, final HelpShower helpDialog) {
+		final String topicKey = url.toExternalForm();
+		synchronized (this) {
+			openedBy.putIfAbsent(topicKey, helpDialog);
+			lastSeen.put(topicKey, System.currentTimeMillis());
+		}
+		if (!checkedTopics.add(topicKey)) return false;
+
+		//NB: remote pages are not fetched just for the sake of indexing
+		final Path cached = RemoteHelpCache.obtain().getCached(url);
+		if (cached == null) return false;
+		try {
+			final ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(cached));
+			final String hash = TopicManifest.sha1(content);
+			if (isIndexed(topicKey, 1, hash)) return false;
+			indexPage(topicKey, title, 1, hash, htmlToText(Charset.defaultCharset().decode(content).toString()));
+			return true;
+		} catch (IOException e) {
+			System.err.println("Failed indexing "+cached+": "+e.getMessage());
+			return false;
+		}
+	}
+
+	private synchronized boolean isIndexed(final String topicKey, final int pageNo, final String hash) {
+		final Map<Integer, Integer> pages = docIdsOfTopics.get(topicKey);
+		final Integer docId = pages != null ? pages.get(pageNo) : null;
+		return docId != null && docs.get(docId).hash.equals(hash);
+	}
+
+	private synchronized void indexPage(final String topicKey, final String title, final int pageNo,
+	                                    final String hash, final String text) {
+		final List<String> tokens = tokenize(title != null ? title + " " + text : text);
+		final Map<String, Integer> freqs = new HashMap<>();
+		for (String t : tokens) freqs.merge(t, 1, Integer::sum);
+
+		final String summary = text.length() > SUMMARY_LENGTH ? text.substring(0, SUMMARY_LENGTH) + "..." : text;
+		final Doc doc = new Doc(topicKey, title != null ? title : "", pageNo, hash, tokens.size(), summary);
+		final int docId = docs.size();
+		docs.add(doc);
+		for (Map.Entry<String, Integer> f : freqs.entrySet()) {
+			terms.computeIfAbsent(f.getKey(), k -> new Postings()).add(docId, f.getValue());
+		}
+
+		final Integer prevDocId = docIdsOfTopics.computeIfAbsent(topicKey, k -> new HashMap<>()).put(pageNo, docId);
+		if (prevDocId != null) removeDoc(docs.get(prevDocId));
+		totalLength += doc.length;
+		++liveDocs;
+	}
+
+	/** Removes the pages that the topic no longer has. */
+	private synchronized boolean removePagesFrom(final String topicKey, final int firstRemovedPageNo) {
+		final Map<Integer, Integer> pages = docIdsOfTopics.get(topicKey);
+		if (pages == null) return false;
+		boolean changed = false;
+		final Iterator<Map.Entry<Integer, Integer>> it = pages.entrySet().iterator();
+		while (it.hasNext()) {
+			final Map.Entry<Integer, Integer> p = it.next();
+			if (p.getKey() < firstRemovedPageNo) continue;
+			removeDoc(docs.get(p.getValue()));
+			it.remove();
+			changed = true;
+		}
+		return changed;
+	}
+
+	private void removeDoc(final Doc doc) {
+		doc.removed = true;
+		totalLength -= doc.length;
+		--liveDocs;
+		++removedDocs;
+	}
+
+	static final int SUMMARY_LENGTH = 200;
+
+	static String htmlToText(final String html) throws IOException {
+		final StringBuilder text = new StringBuilder(html.length() / 2);
+		final HTMLEditorKit.ParserCallback collector = new HTMLEditorKit.ParserCallback() {
+			@Override
+			public void handleText(char[] data, int pos) {
+				if (text.length() > 0) text.append(' ');
+				text.append(data);
+			}
+		};
+		new ParserDelegator().parse(new StringReader(html), collector, true);
+		return text.toString();
+	}
+
+	static List<String> tokenize(final String text) {
+		final List<String> tokens = new ArrayList<>();
+		final String lc = text.toLowerCase(Locale.ROOT);
+		int start = -1;
+		for (int i = 0; i <= lc.length(); ++i) {
+			final boolean isWordChar = i < lc.length() && Character.isLetterOrDigit(lc.charAt(i));
+			if (isWordChar && start == -1) start = i;
+			else if (!isWordChar && start != -1) {
+				if (i - start >= MIN_TOKEN_LENGTH && i - start <= MAX_TOKEN_LENGTH) tokens.add(lc.substring(start, i));
+				start = -1;
+			}
+		}
+		return tokens;
+	}
+
+	static final int MIN_TOKEN_LENGTH = 2;
+	static final int MAX_TOKEN_LENGTH = 40;
+
+	// ==================================================================================================================
+	/** A page found by the search. */
+	public static class Hit {
+		public final String title;
+		public final int pageNo;
+		public final String summary;
+		public final double score;
+		private final HelpShower helpDialog;
+
+		Hit(final Doc doc, final double score, final HelpShower helpDialog) {
+			this.title = doc.title;
+			this.pageNo = doc.pageNo;
+			this.summary = doc.summary;
+			this.score = score;
+			this.helpDialog = helpDialog;
+		}
+
+		/** Opens the help on the found page. */
+		public void show() {
+			final HelpShower h = helpDialog instanceof LazyHelpShower ? ((LazyHelpShower)helpDialog).resolve() : helpDialog;
+			if (h instanceof DefaultLocalHelpShower) ((DefaultLocalHelpShower)h).showNonModalHelpNow(pageNo);
+			else h.showNonModalHelpNow();
+		}
+
+		@Override
+		public String toString() {
+			return title + " (page " + pageNo + ")";
+		}
+	}
+
+	/** BM25 parameters */
+	private static final double K1 = 1.2, B = 0.75;
+	/** The last word of the query is also a prefix of words, unless the query ends with a space. */
+	private static final int MAX_PREFIX_EXPANSIONS = 64;
+
+	/**
+	 * Finds the pages that contain all words of the query, the best matching pages come first.
+	 * The last word of the query is considered to be also a beginning of a word (as if the query was being typed).
+	 * @param query The words to be searched for.
+	 * @param maxHits The maximum number of returned pages.
+	 * @return The found pages, possibly empty list.
+	 */
+	public synchronized List<Hit> search(final String query, final int maxHits) {
+		final List<String> words = tokenize(query);
+		if (words.isEmpty() || liveDocs == 0) return Collections.emptyList();
+		final boolean lastIsPrefix = !Character.isWhitespace(query.charAt(query.length()-1));
+		final int nWords = Math.min(words.size(), 64);
+
+		final double avgLength = Math.max((double)totalLength / liveDocs, 1.0);
+		final double[] scores = new double[docs.size()];
+		final long[] matchedWords = new long[docs.size()];
+		for (int w = 0; w < nWords; ++w) {
+			final String word = words.get(w);
+			final Map<String, Postings> matching;
+			if (w == nWords-1 && lastIsPrefix) {
+				matching = new HashMap<>();
+				final SortedMap<String, Postings> prefixed = terms.subMap(word, word + Character.MAX_VALUE);
+				for (Map.Entry<String, Postings> t : prefixed.entrySet()) {
+					if (matching.size() == MAX_PREFIX_EXPANSIONS) break;
+					matching.put(t.getKey(), t.getValue());
+				}
+				matching.putIfAbsent(word, terms.get(word));
+			} else {
+				matching = Collections.singletonMap(word, terms.get(word));
+			}
+
+			for (Map.Entry<String, Postings> t : matching.entrySet()) {
+				final Postings p = t.getValue();
+				if (p == null) continue;
+				final double idf = Math.log(1.0 + (liveDocs - p.size + 0.5) / (p.size + 0.5));
+				//NB: exact matches are preferred over the prefix matches
+				final double weight = t.getKey().equals(word) ? 1.0 : 0.5;
+				for (int i = 0; i < p.size; ++i) {
+					final int docId = p.docIds[i];
+					final double tf = p.freqs[i];
+					final double norm = K1 * (1.0 - B + B * docs.get(docId).length / avgLength);
+					scores[docId] += weight * idf * tf * (K1 + 1.0) / (tf + norm);
+					matchedWords[docId] |= 1L << w;
+				}
+			}
+		}
+
+		final long allWords = nWords == 64 ? -1L : (1L << nWords) - 1;
+		final List<Hit> hits = new ArrayList<>();
+		for (int docId = 0; docId < scores.length; ++docId) {
+			if (matchedWords[docId] != allWords) continue;
+			final Doc doc = docs.get(docId);
+			final HelpShower helpDialog = openedBy.get(doc.topicKey);
+			if (doc.removed || helpDialog == null) continue;
+			hits.add(new Hit(doc, scores[docId], helpDialog));
+		}
+		hits.sort((a,b) -> Double.compare(b.score, a.score));
+		return hits.size() > maxHits ? new ArrayList<>(hits.subList(0, maxHits)) : hits;
+	}
+
+	/** @return The number of indexed pages. */
+	public synchronized int size() {
+		return liveDocs;
+	}
+
+	// ==================================================================================================================
+	private static final int MAGIC = 0x4c474853; //"LGHS"
+	private static final int VERSION = 2;
+
+	/**
+	 * Replaces the (empty) index with the persisted one, if there's any. The pages of the topics that
+	 * were not registered for the {@link HelpSearchIndex#TOPIC_EXPIRY} are dropped now, once per session.
+	 */
+	private synchronized void load() {
+		final Path file = indexFile;
+		if (!Files.exists(file)) return;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) return;
+			final int nDocs = in.readInt();
+			final List<Doc> loadedDocs = new ArrayList<>(nDocs);
+			for (int i = 0; i < nDocs; ++i) {
+				loadedDocs.add(new Doc(in.readUTF(), in.readUTF(), in.readInt(), in.readUTF(), in.readInt(), in.readUTF()));
+			}
+			final int nTerms = in.readInt();
+			final TreeMap<String, Postings> loadedTerms = new TreeMap<>();
+			for (int i = 0; i < nTerms; ++i) {
+				final String term = in.readUTF();
+				final int size = in.readInt();
+				final Postings p = new Postings();
+				p.docIds = new int[size];
+				p.freqs = new int[size];
+				for (int j = 0; j < size; ++j) {
+					p.docIds[j] = in.readInt();
+					p.freqs[j] = in.readInt();
+				}
+				p.size = size;
+				loadedTerms.put(term, p);
+			}
+			final int nTopics = in.readInt();
+			final Map<String, Long> loadedLastSeen = new HashMap<>();
+			for (int i = 0; i < nTopics; ++i) loadedLastSeen.put(in.readUTF(), in.readLong());
+
+			docs.addAll(loadedDocs);
+			terms.putAll(loadedTerms);
+			for (int docId = 0; docId < docs.size(); ++docId) {
+				final Doc doc = docs.get(docId);
+				docIdsOfTopics.computeIfAbsent(doc.topicKey, k -> new HashMap<>()).put(doc.pageNo, docId);
+				totalLength += doc.length;
+			}
+			liveDocs = docs.size();
+
+			final long now = System.currentTimeMillis();
+			for (String topicKey : new ArrayList<>(docIdsOfTopics.keySet())) {
+				final long seen = loadedLastSeen.getOrDefault(topicKey, now);
+				//NB: the topics registered meanwhile (before the index was loaded) are fresh
+				if (now - seen > TOPIC_EXPIRY && !lastSeen.containsKey(topicKey)) {
+					removePagesFrom(topicKey, 1);
+					docIdsOfTopics.remove(topicKey);
+				} else {
+					lastSeen.putIfAbsent(topicKey, seen);
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Failed reading the search index "+file+", starting a new one: "+e.getMessage());
+			docs.clear();
+			terms.clear();
+			docIdsOfTopics.clear();
+			totalLength = 0;
+			liveDocs = 0;
+		}
+	}
+
+	/**
+	 * Writes the index (without the removed pages) into its file. The topics not (yet) registered in this session
+	 * are kept, the registration of a topic may be only yet to come.
+	 */
+	private synchronized void save() {
+		if (removedDocs > 0) compact();
+		final Path file = indexFile;
+		try {
+			Files.createDirectories(file.toAbsolutePath().getParent());
+			final Path tmpFile = Files.createTempFile(file.toAbsolutePath().getParent(), "search", ".tmp");
+			try {
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+					out.writeInt(MAGIC);
+					out.writeInt(VERSION);
+					out.writeInt(docs.size());
+					for (Doc doc : docs) {
+						out.writeUTF(doc.topicKey);
+						out.writeUTF(doc.title);
+						out.writeInt(doc.pageNo);
+						out.writeUTF(doc.hash);
+						out.writeInt(doc.length);
+						out.writeUTF(doc.summary);
+					}
+					out.writeInt(terms.size());
+					for (Map.Entry<String, Postings> t : terms.entrySet()) {
+						out.writeUTF(t.getKey());
+						final Postings p = t.getValue();
+						out.writeInt(p.size);
+						for (int j = 0; j < p.size; ++j) {
+							out.writeInt(p.docIds[j]);
+							out.writeInt(p.freqs[j]);
+						}
+					}
+					out.writeInt(docIdsOfTopics.size());
+					for (String topicKey : docIdsOfTopics.keySet()) {
+						out.writeUTF(topicKey);
+						out.writeLong(lastSeen.getOrDefault(topicKey, System.currentTimeMillis()));
+					}
+				}
+				Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tmpFile);
+			}
+		} catch (IOException e) {
+			System.err.println("Failed writing the search index "+file+": "+e.getMessage());
+		}
+	}
+
+	/** Drops the removed pages for good, renumbering the remaining ones. */
+	private void compact() {
+		final int[] newIds = new int[docs.size()];
+		final List<Doc> liveDocsList = new ArrayList<>(liveDocs);
+		for (int docId = 0; docId < docs.size(); ++docId) {
+			final Doc doc = docs.get(docId);
+			newIds[docId] = doc.removed ? -1 : liveDocsList.size();
+			if (!doc.removed) liveDocsList.add(doc);
+		}
+
+		final Iterator<Postings> it = terms.values().iterator();
+		while (it.hasNext()) {
+			final Postings p = it.next();
+			int size = 0;
+			for (int i = 0; i < p.size; ++i) {
+				if (newIds[p.docIds[i]] == -1) continue;
+				p.docIds[size] = newIds[p.docIds[i]];
+				p.freqs[size] = p.freqs[i];
+				++size;
+			}
+			p.size = size;
+			if (size == 0) it.remove();
+		}
+
+		docs.clear();
+		docs.addAll(liveDocsList);
+		docIdsOfTopics.clear();
+		for (int docId = 0; docId < docs.size(); ++docId) {
+			final Doc doc = docs.get(docId);
+			docIdsOfTopics.computeIfAbsent(doc.topicKey, k -> new HashMap<>()).put(doc.pageNo, docId);
+		}
+		removedDocs = 0;
+	}
+}
@@ -30,4 +30,19 @@ package sc.fiji.gui.help;
 
 public interface HelpShower {
 	void showNonModalHelpNow();
+
+	/**
+	 * Hints that the help is likely to be shown soon, e.g., because the mouse pointer rests over
+	 * its component, so that its content can be loaded in the background already now. Must return
+	 * quickly, it's called on the Event Dispatch Thread. Does nothing by default.
+	 */
+	default void warmUp() {}
+
+	/**
+	 * @return True if the help is shown already, e.g., in a window that {@link HelpShower#showNonModalHelpNow()}
+	 *         would then only bring to front. False by default.
+	 */
+	default boolean isOpen() {
+		return false;
+	}
 }
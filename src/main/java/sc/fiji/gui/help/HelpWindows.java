@@ -0,0 +1,160 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import javax.swing.JFrame;
+import java.awt.Frame;
+import java.awt.GraphicsConfiguration;
+import java.awt.MouseInfo;
+import java.awt.Point;
+import java.awt.PointerInfo;
+import java.awt.Rectangle;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps track of the currently open help windows, one per help topic, so that a repeated
+ * request to show a topic only brings its already open window to front (and next to the mouse pointer)
+ * instead of creating a new one. The number of open help windows is bounded, the least recently
+ * requested windows are closed (disposed) when the bound is exceeded.
+ */
+public class HelpWindows {
+	private HelpWindows() {}
+
+	private static HelpWindows instance = null;
+
+	/** Returns the one and always the same instance of the help windows registry. */
+	public static synchronized HelpWindows obtain() {
+		if (instance == null) {
+			instance = new HelpWindows();
+		}
+		return instance;
+	}
+
+	// ==================================================================================================================
+	private boolean reuseWindows = true;
+	private int maxOpenWindows = 8;
+	private final LinkedHashMap<Object, JFrame> openWindows = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * Enables (default) or disables the re-use of the help windows. If disabled,
+	 * every help request opens a new window.
+	 * @param reuse True to re-use windows.
+	 */
+	public synchronized void setReuseWindows(final boolean reuse) {
+		reuseWindows = reuse;
+	}
+
+	public synchronized boolean isReusingWindows() {
+		return reuseWindows;
+	}
+
+	/**
+	 * Sets the maximum number of simultaneously open (tracked) help windows, default is 8.
+	 * @param maxWindows The bound, at least 1.
+	 */
+	public synchronized void setMaxOpenWindows(final int maxWindows) {
+		maxOpenWindows = Math.max(maxWindows, 1);
+		closeOverBound();
+	}
+
+	/**
+	 * Brings the window of the given topic to front, if there's such window open.
+	 * @param topic The key of the topic, e.g., the path or the URL of it.
+	 * @return The re-used window or null if there's none.
+	 */
+	public synchronized JFrame bringToFront(final Object topic) {
+		if (!reuseWindows) return null;
+		final JFrame f = openWindows.get(topic);
+		if (f == null) return null;
+
+		if ((f.getExtendedState() & Frame.ICONIFIED) != 0) f.setExtendedState(f.getExtendedState() & ~Frame.ICONIFIED);
+		moveNextToMousePointer(f);
+		f.setVisible(true);
+		f.toFront();
+		return f;
+	}
+
+	/**
+	 * @param topic The key of the topic, e.g., the path or the URL of it.
+	 * @return True if the window of the given topic is open (and would be re-used).
+	 */
+	public synchronized boolean isOpen(final Object topic) {
+		return reuseWindows && openWindows.containsKey(topic);
+	}
+
+	/**
+	 * Starts tracking the given window as the one that shows the given topic.
+	 * The window is forgotten when it gets disposed.
+	 * @param topic The key of the topic, e.g., the path or the URL of it.
+	 * @param window Window that shows the topic.
+	 */
+	public synchronized void register(final Object topic, final JFrame window) {
+		if (!reuseWindows) return;
+		final JFrame prev = openWindows.put(topic, window);
+		if (prev != null && prev != window) prev.dispose();
+
+		window.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosed(WindowEvent e) { forget(topic, window); }
+		});
+		closeOverBound();
+	}
+
+	private synchronized void forget(final Object topic, final JFrame window) {
+		openWindows.remove(topic, window);
+	}
+
+	private void closeOverBound() {
+		final Iterator<Map.Entry<Object, JFrame>> it = openWindows.entrySet().iterator();
+		while (openWindows.size() > maxOpenWindows && it.hasNext()) {
+			final JFrame lru = it.next().getValue();
+			it.remove();
+			lru.dispose();
+		}
+	}
+
+	static void moveNextToMousePointer(final JFrame f) {
+		final PointerInfo pointer = MouseInfo.getPointerInfo();
+		if (pointer == null) return;
+		final Point p = pointer.getLocation();
+		final GraphicsConfiguration gc = pointer.getDevice().getDefaultConfiguration();
+		final Rectangle screen = gc.getBounds();
+
+		//centered at the pointer, but fully on the pointer's screen if possible
+		int x = p.x - f.getWidth()/2;
+		int y = p.y - f.getHeight()/2;
+		x = Math.max(screen.x, Math.min(x, screen.x + screen.width - f.getWidth()));
+		y = Math.max(screen.y, Math.min(y, screen.y + screen.height - f.getHeight()));
+		f.setLocation(x, y);
+	}
+}
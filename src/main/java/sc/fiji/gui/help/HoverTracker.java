@@ -0,0 +1,152 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.awt.AWTEvent;
+import java.awt.Component;
+import java.awt.Point;
+import java.awt.Toolkit;
+import java.awt.Window;
+import java.awt.event.AWTEventListener;
+import java.awt.event.MouseEvent;
+import java.lang.ref.WeakReference;
+
+/**
+ * Tracks which registered component is under the mouse pointer, using one application-wide listener
+ * of mouse (motion) events, and warms up the help of that component after the pointer has rested
+ * over it for the dwell time, see {@link HelpShower#warmUp()}. All work happens on the Event Dispatch Thread.
+ */
+class HoverTracker implements AWTEventListener {
+	private final HelpComponentsIndex helpIndex;
+	private final Timer dwellTimer;
+
+	/** The component under the mouse pointer (null if there's no such component), and where the pointer was. */
+	private WeakReference<Component> hovered = new WeakReference<>(null);
+	private WeakReference<Component> pointerRoot = new WeakReference<>(null);
+	private Point pointerPos = null;
+	private HelpShower warmedUp = null;
+	private int candidatesScanned = 0;
+	private boolean isTracking = false;
+
+	HoverTracker(final HelpComponentsIndex helpIndex, final int dwellMillis) {
+		this.helpIndex = helpIndex;
+		dwellTimer = new Timer(dwellMillis, (l) -> warmUpHovered());
+		dwellTimer.setRepeats(false);
+	}
+
+	void install() {
+		Toolkit.getDefaultToolkit().addAWTEventListener(this,
+				AWTEvent.MOUSE_MOTION_EVENT_MASK | AWTEvent.MOUSE_EVENT_MASK);
+	}
+
+	void uninstall() {
+		Toolkit.getDefaultToolkit().removeAWTEventListener(this);
+		dwellTimer.stop();
+		hovered = new WeakReference<>(null);
+		pointerRoot = new WeakReference<>(null);
+	}
+
+	void setDwellTime(final int dwellMillis) {
+		dwellTimer.setInitialDelay(dwellMillis);
+	}
+
+	@Override
+	public void eventDispatched(final AWTEvent event) {
+		if (!(event instanceof MouseEvent)) return;
+		final MouseEvent e = (MouseEvent)event;
+		switch (e.getID()) {
+		case MouseEvent.MOUSE_MOVED:
+		case MouseEvent.MOUSE_DRAGGED:
+		case MouseEvent.MOUSE_ENTERED:
+		case MouseEvent.MOUSE_EXITED:
+			break;
+		default:
+			return;
+		}
+
+		isTracking = true;
+		//NB: entering also covers windows that appear under the resting pointer
+		final Component source = e.getComponent();
+		final Component root = source instanceof Window ? source : SwingUtilities.getWindowAncestor(source);
+		pointerRoot = new WeakReference<>(root);
+		pointerPos = e.getLocationOnScreen();
+		final Component c = lookUpHovered();
+		if (c == hovered.get()) return;
+
+		hovered = new WeakReference<>(c);
+		final HelpShower h = c != null ? helpIndex.get(c) : null;
+		if (h != null && h != warmedUp) dwellTimer.restart();
+		else dwellTimer.stop();
+	}
+
+	private Component lookUpHovered() {
+		final Component c = helpIndex.findComponentAt(pointerPos, pointerRoot.get());
+		candidatesScanned = helpIndex.getCandidatesScanned();
+		return c;
+	}
+
+	/**
+	 * The window could have been closed, or the layout could have changed, under the resting pointer
+	 * since the last mouse event, so the component is looked up again if it's no longer under the pointer.
+	 * @return The component under the mouse pointer, or null.
+	 */
+	private Component revalidateHovered() {
+		Component c = hovered.get();
+		if (pointerPos == null || (c != null && helpIndex.isShowingAt(c, pointerPos))) return c;
+		c = lookUpHovered();
+		hovered = new WeakReference<>(c);
+		return c;
+	}
+
+	private void warmUpHovered() {
+		final Component c = revalidateHovered();
+		final HelpShower h = c != null ? helpIndex.get(c) : null;
+		if (h == null) return;
+		warmedUp = h;
+		h.warmUp();
+	}
+
+	/** @return False if the mouse pointer has not moved since this tracker was installed. */
+	boolean isTracking() {
+		return isTracking;
+	}
+
+	/** @return The help of the component under the mouse pointer (which was there on its last move), or null. */
+	HelpShower getHovered() {
+		final Component c = revalidateHovered();
+		return c != null ? helpIndex.get(c) : null;
+	}
+
+	/** @return Number of the components that were considered when the hovered component was last looked up. */
+	int getCandidatesScanned() {
+		return candidatesScanned;
+	}
+}
@@ -0,0 +1,132 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Lightweight stand-in of a help dialog that only remembers how to create the actual dialog.
+ * The actual dialog, including resolving the location of its topic (e.g., the class-loader
+ * lookups or URL parsing), is created on the first request to show it.
+ */
+class LazyHelpShower implements HelpShower {
+	private final Supplier<HelpShower> factory;
+	private volatile HelpShower helpDialog = null;
+
+	/** Where the pages of the topic are, which can be consulted (off the EDT) without creating the dialog, can be null. */
+	final Supplier<HelpPagesSource> localPages;
+	final Supplier<URL> remoteUrl;
+	final String dialogTitle;
+
+	LazyHelpShower(final Supplier<HelpShower> factory) {
+		this(factory, null, null, null);
+	}
+
+	private LazyHelpShower(final Supplier<HelpShower> factory, final Supplier<HelpPagesSource> localPages,
+	                       final Supplier<URL> remoteUrl, final String dialogTitle) {
+		this.factory = factory;
+		this.localPages = localPages;
+		this.remoteUrl = remoteUrl;
+		this.dialogTitle = dialogTitle;
+	}
+
+	/** @return The actual help dialog, which is created now if it wasn't created yet. */
+	HelpShower resolve() {
+		HelpShower h = helpDialog;
+		if (h == null) {
+			synchronized (this) {
+				h = helpDialog;
+				if (h == null) {
+					h = factory.get();
+					helpDialog = h;
+				}
+			}
+		}
+		return h;
+	}
+
+	/** @return The actual help dialog if it has been created already, or null. */
+	HelpShower resolved() {
+		return helpDialog;
+	}
+
+	@Override
+	public void showNonModalHelpNow() {
+		resolve().showNonModalHelpNow();
+	}
+
+	/** Creates the actual dialogs that are warmed up before they were ever shown. */
+	private static final ExecutorService resolver = Executors.newSingleThreadExecutor(r -> {
+		final Thread t = new Thread(r, "local-gui-help lazy help resolver");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/** NB: the warm-up must return quickly, the actual dialog is therefore created in the background if needed. */
+	@Override
+	public void warmUp() {
+		final HelpShower h = helpDialog;
+		if (h != null) {
+			h.warmUp();
+			return;
+		}
+		resolver.execute(() -> {
+			try {
+				resolve().warmUp();
+			} catch (RuntimeException e) {
+				System.err.println("Failed warming up the help: "+e.getMessage());
+			}
+		});
+	}
+
+	/** NB: an unresolved help has never been shown, and it is not resolved just to find it out. */
+	@Override
+	public boolean isOpen() {
+		final HelpShower h = helpDialog;
+		return h != null && h.isOpen();
+	}
+
+	// ==================================================================================================================
+	static LazyHelpShower forLocalTopic(final Class<?> appClass, final String topic,
+	                                    final String dialogTitle, final int startOnThisPageNumber) {
+		final Supplier<HelpPagesSource> pages =
+				() -> new DirectoryPagesSource(HelpManager.constructPathToLocalTopics(appClass, topic));
+		return new LazyHelpShower(() -> new DefaultLocalHelpShower(pages.get(), dialogTitle, startOnThisPageNumber),
+				pages, null, dialogTitle);
+	}
+
+	static LazyHelpShower forRemoteTopic(final String urlToRemoteTopic, final String dialogTitle) {
+		final Supplier<URL> url = () -> HelpManager.constructURL(urlToRemoteTopic);
+		return new LazyHelpShower(() -> new DefaultRemoteHelpShower(url.get(), dialogTitle),
+				null, url, dialogTitle);
+	}
+}
@@ -0,0 +1,157 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.Icon;
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * Image of a help page that was decoded just large enough to fit the display it is shown on.
+ * The icon has the (logical) size of the fitted image, but it may hold more pixels (e.g., twice as many
+ * in every direction) for HiDPI displays, where they are all used when the image is painted. Hence,
+ * it serves the same purpose as a multi-resolution image, but it holds only the one needed resolution.
+ */
+class PageImageIcon implements Icon {
+	final BufferedImage image;
+	final int width, height;
+
+	PageImageIcon(final BufferedImage image, final int width, final int height) {
+		this.image = image;
+		this.width = width;
+		this.height = height;
+	}
+
+	@Override
+	public void paintIcon(Component c, Graphics g, int x, int y) {
+		final Graphics2D g2 = (Graphics2D)g.create();
+		try {
+			g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g2.drawImage(image, x, y, width, height, null);
+		} finally {
+			g2.dispose();
+		}
+	}
+
+	@Override
+	public int getIconWidth() {
+		return width;
+	}
+
+	@Override
+	public int getIconHeight() {
+		return height;
+	}
+
+	/** @return Approximate memory footprint of this icon. */
+	long getBytes() {
+		return 4L * image.getWidth() * image.getHeight();
+	}
+
+	// ==================================================================================================================
+	/** @return Name of the image file (variant) to be shown on the display, or null if the page has no image. */
+	static String imageFileName(final HelpPagesSource topic, final int pageNo, final HelpPagesCache.Display display) {
+		final String hiDpiFileName = pageNo + "@2x.png";
+		if (display.scale > 1.0 && HelpPagesCache.pageFileExists(topic, hiDpiFileName)) return hiDpiFileName;
+		final String fileName = pageNo + ".png";
+		return HelpPagesCache.pageFileExists(topic, fileName) ? fileName : null;
+	}
+
+	/**
+	 * Decodes the image so that it fits the display. The image file should be chosen with
+	 * {@link PageImageIcon#imageFileName(HelpPagesSource, int, HelpPagesCache.Display)}, which
+	 * prefers the variant with twice the resolution (the file "N@2x.png") on HiDPI displays.
+	 * The image is subsampled already while being decoded, and only then it's scaled precisely.
+	 * Images are never enlarged.
+	 *
+	 * @param content The content of the image file, see {@link HelpPagesCache#readPageFile(HelpPagesSource, String)}.
+	 * @param fileName Name of the image file, e.g., "1.png" or "1@2x.png".
+	 * @param display The display (area) where the image will be shown.
+	 * @param topic Pages of the topic, for error messages.
+	 * @return The decoded image.
+	 * @throws IOException If the image could not be decoded.
+	 */
+	static PageImageIcon decode(final ByteBuffer content, final String fileName, final HelpPagesCache.Display display,
+	                            final HelpPagesSource topic) throws IOException {
+		final double pixelsPerUnit = fileName.endsWith("@2x.png") ? 2.0 : 1.0;
+		try (ImageInputStream iis = ImageIO.createImageInputStream(HelpPagesSource.asStream(content))) {
+			final Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+			if (!readers.hasNext()) throw new IOException("Unrecognized image format of "+topic.describe(fileName));
+			final ImageReader reader = readers.next();
+			try {
+				reader.setInput(iis);
+				final int srcWidth = reader.getWidth(0);
+				final int srcHeight = reader.getHeight(0);
+
+				//the logical size of the image when fitted into the display
+				final double naturalWidth = srcWidth / pixelsPerUnit;
+				final double naturalHeight = srcHeight / pixelsPerUnit;
+				double fit = 1.0;
+				if (display.width > 0) fit = Math.min(fit, display.width / naturalWidth);
+				if (display.height > 0) fit = Math.min(fit, display.height / naturalHeight);
+				final int width = Math.max((int)Math.round(naturalWidth * fit), 1);
+				final int height = Math.max((int)Math.round(naturalHeight * fit), 1);
+
+				//the needed number of pixels, never more than what's available
+				final int pxWidth = Math.min((int)Math.round(width * display.scale), srcWidth);
+				final int pxHeight = Math.min((int)Math.round(height * display.scale), srcHeight);
+
+				final ImageReadParam param = reader.getDefaultReadParam();
+				final int subsampling = Math.max(Math.min(srcWidth / pxWidth, srcHeight / pxHeight), 1);
+				param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				BufferedImage img = reader.read(0, param);
+
+				if (img.getWidth() > pxWidth || img.getHeight() > pxHeight) img = scaled(img, pxWidth, pxHeight);
+				return new PageImageIcon(img, width, height);
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	static BufferedImage scaled(final BufferedImage img, final int width, final int height) {
+		final BufferedImage out = new BufferedImage(width, height,
+				img.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		final Graphics2D g = out.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(img, 0, 0, width, height, null);
+		g.dispose();
+		return out;
+	}
+}
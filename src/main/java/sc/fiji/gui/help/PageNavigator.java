@@ -0,0 +1,302 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Strip of page thumbnails of one topic, to be shown in the local help window of large topics.
+ * The strip is virtualized: it is a list with fixed-size cells, so only the visible cells are ever
+ * rendered, and the thumbnails are decoded (at low resolution, in the background) only once their
+ * cells are rendered. The most recently requested thumbnails are decoded first, and the requests
+ * of the thumbnails that were meanwhile scrolled out of the view are dropped.
+ */
+class PageNavigator {
+	static final HelpPagesCache.Display THUMBNAIL = new HelpPagesCache.Display(96, 64, 1.0);
+
+	private final HelpPagesSource pages;
+	private final PagesModel model = new PagesModel();
+	private final JList<Integer> list = new JList<>(model);
+	private final JScrollPane scrollPane;
+	private boolean isAdjusting = false;
+	private int minPages = Integer.MAX_VALUE;
+	private IntConsumer whenCounted = null;
+
+	/** The range of the visible cells, updated on the EDT and read by the loading thread. */
+	private volatile int firstVisible = 0, lastVisible = -1;
+	/** Pages whose thumbnails are being loaded, accessed only on the EDT. */
+	private final Set<Integer> requested = new HashSet<>();
+
+	/**
+	 * @param pages Pages of the topic.
+	 * @param whenChosen Consumer of the page number of the thumbnail chosen by the user.
+	 */
+	PageNavigator(final HelpPagesSource pages, final IntConsumer whenChosen) {
+		this.pages = pages;
+		list.setLayoutOrientation(JList.HORIZONTAL_WRAP);
+		list.setVisibleRowCount(1);
+		list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		//NB: fixed cell sizes avoid rendering all cells just to find out their sizes
+		list.setFixedCellWidth(THUMBNAIL.width + 8);
+		list.setFixedCellHeight(THUMBNAIL.height + 24);
+		list.setCellRenderer(new ThumbnailRenderer());
+		list.addListSelectionListener(e -> {
+			if (!e.getValueIsAdjusting() && !isAdjusting && list.getSelectedValue() != null) {
+				whenChosen.accept(list.getSelectedValue());
+			}
+		});
+
+		scrollPane = new JScrollPane(list, ScrollPaneConstants.VERTICAL_SCROLLBAR_NEVER,
+				ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+		scrollPane.getViewport().addChangeListener(e -> updateVisibleRange());
+		scrollPane.setVisible(false);
+	}
+
+	JComponent getComponent() {
+		return scrollPane;
+	}
+
+	/**
+	 * Shows the navigator if the topic has at least the given number of pages, which is found out in the background.
+	 * @param minPages The minimum number of pages.
+	 * @param whenCounted Consumer of the number of pages, executed on the EDT.
+	 */
+	void showIfAtLeast(final int minPages, final IntConsumer whenCounted) {
+		this.minPages = minPages;
+		this.whenCounted = whenCounted;
+		THUMBNAILS_LOADER.execute(() -> {
+			final int count = countPages(pages);
+			SwingUtilities.invokeLater(() -> {
+				model.setSize(count);
+				whenCounted.accept(count);
+				if (count >= minPages && !scrollPane.isVisible()) {
+					scrollPane.setVisible(true);
+					final Window w = SwingUtilities.getWindowAncestor(scrollPane);
+					if (w != null) w.pack();
+				}
+			});
+		});
+	}
+
+	/** Marks (and scrolls to) the currently shown page, without notifying the consumer of the chosen pages. */
+	void setCurrentPage(final int pageNo) {
+		if (pageNo < 1 || pageNo > model.getSize()) return;
+		isAdjusting = true;
+		list.setSelectedIndex(pageNo-1);
+		list.ensureIndexIsVisible(pageNo-1);
+		isAdjusting = false;
+	}
+
+	/**
+	 * Re-counts the pages and re-renders the thumbnails, e.g., after some pages of the topic have changed,
+	 * see {@link PageNavigator#invalidateThumbnails(HelpPagesSource, IntPredicate)}.
+	 */
+	void refresh() {
+		if (whenCounted != null) showIfAtLeast(minPages, whenCounted);
+		list.repaint();
+	}
+
+	/** Drops all pending thumbnail requests, e.g., when the window is closed. */
+	void dispose() {
+		firstVisible = 0;
+		lastVisible = -1;
+	}
+
+	private void updateVisibleRange() {
+		firstVisible = list.getFirstVisibleIndex();
+		lastVisible = list.getLastVisibleIndex();
+	}
+
+	static int countPages(final HelpPagesSource pages) {
+		final TopicManifest m = HelpPagesCache.obtain().getManifest(pages);
+		if (m != null) return m.getNumberOfPages();
+		int count = 0;
+		while (HelpPagesCache.pageExists(pages, count+1)) ++count;
+		return count;
+	}
+
+	// ==================================================================================================================
+	@SuppressWarnings("serial")
+	private class PagesModel extends AbstractListModel<Integer> {
+		private int size = 0;
+
+		void setSize(final int size) {
+			final int prevSize = this.size;
+			this.size = size;
+			if (size > prevSize) fireIntervalAdded(this, prevSize, size-1);
+			else if (size < prevSize) fireIntervalRemoved(this, size, prevSize-1);
+		}
+
+		@Override
+		public int getSize() {
+			return size;
+		}
+
+		@Override
+		public Integer getElementAt(int index) {
+			return index+1;
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private class ThumbnailRenderer extends DefaultListCellRenderer {
+		ThumbnailRenderer() {
+			setHorizontalAlignment(CENTER);
+			setHorizontalTextPosition(CENTER);
+			setVerticalTextPosition(BOTTOM);
+		}
+
+		@Override
+		public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+		                                              boolean isSelected, boolean cellHasFocus) {
+			super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+			final int pageNo = (Integer)value;
+			setIcon(getThumbnail(pageNo));
+			return this;
+		}
+	}
+
+	/** @return The thumbnail if it's loaded already, else null and the thumbnail is requested to be loaded. */
+	private Icon getThumbnail(final int pageNo) {
+		final ThumbnailKey key = new ThumbnailKey(pages, pageNo);
+		final Icon icon;
+		synchronized (THUMBNAILS) {
+			icon = THUMBNAILS.get(key);
+		}
+		if (icon != null || !requested.add(pageNo)) return icon;
+
+		//NB: the renderer is asked only for the visible cells
+		updateVisibleRange();
+		THUMBNAILS_LOADER.execute(() -> {
+			final int index = pageNo-1;
+			if (index >= firstVisible - PRELOADED_CELLS && index <= lastVisible + PRELOADED_CELLS) {
+				final Icon thumbnail = loadThumbnail(pages, pageNo);
+				synchronized (THUMBNAILS) {
+					THUMBNAILS.put(key, thumbnail != null ? thumbnail : NO_THUMBNAIL);
+				}
+			}
+			SwingUtilities.invokeLater(() -> {
+				requested.remove(pageNo);
+				if (index < model.getSize()) {
+					final Rectangle cell = list.getCellBounds(index, index);
+					if (cell != null) list.repaint(cell);
+				}
+			});
+		});
+		return null;
+	}
+
+	/** How many cells beyond the visible ones are still worth their thumbnails. */
+	private static final int PRELOADED_CELLS = 2;
+
+	static Icon loadThumbnail(final HelpPagesSource pages, final int pageNo) {
+		final String fileName = PageImageIcon.imageFileName(pages, pageNo, THUMBNAIL);
+		if (fileName == null) return null;
+		try {
+			//NB: the same images in several topics are decoded only once
+			return HelpPagesCache.obtain().loadImage(pages, fileName, THUMBNAIL, null);
+		} catch (IOException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Drops the cached thumbnails of the given pages so that they are loaded anew when rendered next time.
+	 * @param pages Pages of the topic.
+	 * @param isChanged Tells if a page number belongs to a page whose thumbnail should be dropped.
+	 */
+	static void invalidateThumbnails(final HelpPagesSource pages, final IntPredicate isChanged) {
+		synchronized (THUMBNAILS) {
+			THUMBNAILS.keySet().removeIf(k -> k.pages.equals(pages) && isChanged.test(k.pageNo));
+		}
+	}
+
+	// ==================================================================================================================
+	private static class ThumbnailKey {
+		final HelpPagesSource pages;
+		final int pageNo;
+
+		ThumbnailKey(final HelpPagesSource pages, final int pageNo) {
+			this.pages = pages;
+			this.pageNo = pageNo;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(pages, pageNo);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof ThumbnailKey)) return false;
+			final ThumbnailKey k = (ThumbnailKey)obj;
+			return pageNo == k.pageNo && pages.equals(k.pages);
+		}
+	}
+
+	/** Stand-in of the thumbnail of a page without an image, so that it is not attempted to be loaded again. */
+	private static final Icon NO_THUMBNAIL = new ImageIcon(new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB));
+	private static final int MAX_THUMBNAILS = 1000;
+
+	/** Thumbnails of all topics, the least recently used ones are dropped. */
+	private static final Map<ThumbnailKey, Icon> THUMBNAILS = new LinkedHashMap<ThumbnailKey, Icon>(64, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<ThumbnailKey, Icon> eldest) {
+			return size() > MAX_THUMBNAILS;
+		}
+	};
+
+	/** One (daemon) thread that takes the most recently requested thumbnails first. */
+	private static final ExecutorService THUMBNAILS_LOADER = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+			new LinkedBlockingDeque<Runnable>() {
+				@Override
+				public boolean offer(Runnable r) {
+					return offerFirst(r);
+				}
+			},
+			r -> {
+				final Thread t = new Thread(r, "local-gui-help thumbnails loader");
+				t.setDaemon(true);
+				return t;
+			});
+}
@@ -0,0 +1,611 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import javax.swing.SwingUtilities;
+import javax.swing.text.MutableAttributeSet;
+import javax.swing.text.html.HTML;
+import javax.swing.text.html.HTMLEditorKit;
+import javax.swing.text.html.parser.ParserDelegator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persistent, on-disk cache of the remote help content. The content is stored in a folder structure that
+ * mirrors the URLs (host/path), the names of the cached files carry a suffix so that they never clash with
+ * the folders (e.g., of "host/a" and "host/a/b.png"). The cached pages are to be shown from their
+ * {@link RemoteHelpCache#getCachedUrl(URL)}, so that relative links between the cached files (e.g., from
+ * an HTML page to its images and style sheets) resolve to the cached files too. Every cached file is accompanied with a small
+ * "sidecar" file with its HTTP validators (ETag and Last-Modified), which are used to revalidate the
+ * content with a conditional request whenever it's fetched again. If the remote server is not reachable,
+ * the (possibly stale) cached content is served. The least recently used files are removed when
+ * the size of the cache exceeds its bound. The same content downloaded from several URLs is stored
+ * only once (the cached files are hard links to it) where the file system allows it.
+ *
+ * The content can be also requested to be fetched in the background, by a bounded pool of (daemon)
+ * threads which thus limits the number of concurrent connections. All connections are time-bounded,
+ * and fetching in the background can be cancelled, which also closes the underlying connection.
+ */
+public class RemoteHelpCache {
+	RemoteHelpCache(final Path cacheFolder) {
+		this.cacheFolder = cacheFolder;
+	}
+
+	private static RemoteHelpCache instance = null;
+
+	/** Returns the one and always the same instance of the remote help cache. */
+	public static synchronized RemoteHelpCache obtain() {
+		if (instance == null) {
+			instance = new RemoteHelpCache(
+					Paths.get(System.getProperty("user.home"), ".local-gui-help", "cache") );
+		}
+		return instance;
+	}
+
+	// ==================================================================================================================
+	static final String META_SUFFIX = ".cache-meta";
+
+	private Path cacheFolder;
+	private long maxCacheSize = 50L << 20;
+	private int connectTimeout = 5000;
+	private int readTimeout = 10000;
+	private long revalidationInterval = 60L * 60L * 1000L;
+
+	private final ExecutorService fetcher = Executors.newFixedThreadPool(4, r -> {
+		final Thread t = new Thread(r, "local-gui-help remote fetcher");
+		t.setDaemon(true);
+		return t;
+	});
+
+	public synchronized void setCacheFolder(final Path folder) {
+		cacheFolder = folder;
+		cacheSize = -1;
+	}
+
+	public synchronized Path getCacheFolder() {
+		return cacheFolder;
+	}
+
+	/**
+	 * Sets the maximum size of the cached files on the disk, default is 50 MB.
+	 * @param bytes The bound in bytes.
+	 */
+	public synchronized void setMaxCacheSize(final long bytes) {
+		maxCacheSize = bytes;
+	}
+
+	/**
+	 * Sets the timeouts of establishing the connection and of reading from it,
+	 * defaults are 5 and 10 seconds, respectively.
+	 * @param connectMillis Connect timeout in milliseconds.
+	 * @param readMillis Read timeout in milliseconds.
+	 */
+	public synchronized void setTimeouts(final int connectMillis, final int readMillis) {
+		connectTimeout = connectMillis;
+		readTimeout = readMillis;
+	}
+
+	/**
+	 * Sets for how long the cached content is considered fresh, that is, served without revalidation.
+	 * Default is one hour. Set to 0 to revalidate on every request.
+	 * @param millis The interval in milliseconds.
+	 */
+	public synchronized void setRevalidationInterval(final long millis) {
+		revalidationInterval = millis;
+	}
+
+	/**
+	 * Requests the HTML page (together with its images and style sheets) to be fetched in the background,
+	 * and the local copy of it to be handed over to the given consumer, which is executed on the Event
+	 * Dispatch Thread (EDT). If the page cannot be fetched, the other consumer is executed (on the EDT).
+	 * @param pageUrl URL of the page.
+	 * @param whenFetched The consumer of the local copy of the page.
+	 * @param whenFailed The consumer of the reason why the page is not available.
+	 * @return Handle to cancel the fetching, nothing is handed over after the cancellation.
+	 */
+	public Future<Path> requestPage(final URL pageUrl, final Consumer<Path> whenFetched, final Consumer<IOException> whenFailed) {
+		final Fetching fetching = new Fetching(pageUrl, whenFetched, whenFailed);
+		fetcher.execute(fetching);
+		return fetching;
+	}
+
+	/** The state of one (possibly multi-file) fetching, to be able to stop it. */
+	private static class FetchingState {
+		volatile HttpURLConnection connection = null;
+		volatile boolean cancelled = false;
+	}
+
+	private class Fetching extends FutureTask<Path> {
+		private final FetchingState state;
+		private final Consumer<Path> whenFetched;
+		private final Consumer<IOException> whenFailed;
+
+		Fetching(final URL pageUrl, final Consumer<Path> whenFetched, final Consumer<IOException> whenFailed) {
+			this(pageUrl, new FetchingState(), whenFetched, whenFailed);
+		}
+
+		private Fetching(final URL pageUrl, final FetchingState state,
+		                 final Consumer<Path> whenFetched, final Consumer<IOException> whenFailed) {
+			super(() -> fetchPage(pageUrl, state));
+			this.state = state;
+			this.whenFetched = whenFetched;
+			this.whenFailed = whenFailed;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			final boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (cancelled) {
+				state.cancelled = true;
+				final HttpURLConnection c = state.connection;
+				if (c != null) c.disconnect();
+			}
+			return cancelled;
+		}
+
+		@Override
+		protected void done() {
+			if (isCancelled()) return;
+			try {
+				final Path page = get();
+				SwingUtilities.invokeLater(() -> { if (!isCancelled()) whenFetched.accept(page); });
+			} catch (InterruptedException | ExecutionException e) {
+				final IOException reason = e.getCause() instanceof IOException
+						? (IOException)e.getCause() : new IOException(e.getCause());
+				SwingUtilities.invokeLater(() -> { if (!isCancelled()) whenFailed.accept(reason); });
+			}
+		}
+	}
+
+	/**
+	 * Fetches the HTML page together with the images and style sheets it links to.
+	 * Only the links to the same host as the page are fetched.
+	 * @param pageUrl URL of the page.
+	 * @return Local cached copy of the page.
+	 * @throws IOException If the page could not be fetched and it's not cached from before.
+	 */
+	public Path fetchPage(final URL pageUrl) throws IOException {
+		return fetchPage(pageUrl, null);
+	}
+
+	private Path fetchPage(final URL pageUrl, final FetchingState fetching) throws IOException {
+		final Path page = fetch(pageUrl, fetching);
+		final Set<Path> served = new HashSet<>();
+		served.add(page);
+		try {
+			for (URL linked : listLinkedResources(page, pageUrl)) {
+				if (fetching != null && fetching.cancelled) return page;
+				try {
+					served.add(fetch(linked, fetching));
+				} catch (IOException e) {
+					System.err.println("Failed fetching "+linked+" linked from the help page: "+e.getMessage());
+				}
+			}
+		} finally {
+			evictIfOverBound(served);
+		}
+		return page;
+	}
+
+	/**
+	 * Fetches the content of the URL into the cache, or only revalidates the content if it's cached already.
+	 * @param url URL of the content, must be http or https.
+	 * @return Local cached copy of the content.
+	 * @throws IOException If the content could not be fetched and it's not cached from before.
+	 */
+	public Path fetch(final URL url) throws IOException {
+		return fetch(url, null);
+	}
+
+	private Path fetch(final URL url, final FetchingState fetching) throws IOException {
+		final long start = System.nanoTime();
+		final Path file = cachedFile(url);
+		final Path metaFile = file.resolveSibling(file.getFileName() + META_SUFFIX);
+		final Properties meta = readMeta(metaFile);
+		final boolean isCached = meta != null && Files.exists(file);
+		if (isCached && isFresh(meta)) {
+			touch(metaFile);
+			return reported(url, start, HelpMetrics.FetchOutcome.CACHED, file);
+		}
+
+		try {
+			final URLConnection c = url.openConnection();
+			if (!(c instanceof HttpURLConnection)) throw new IOException("Not an HTTP URL: "+url);
+			final HttpURLConnection conn = (HttpURLConnection)c;
+			synchronized (this) {
+				conn.setConnectTimeout(connectTimeout);
+				conn.setReadTimeout(readTimeout);
+			}
+			if (fetching != null) {
+				fetching.connection = conn;
+				if (fetching.cancelled) throw new IOException("Fetching was cancelled: "+url);
+			}
+			if (isCached) {
+				if (meta.getProperty("etag") != null) conn.setRequestProperty("If-None-Match", meta.getProperty("etag"));
+				if (meta.getProperty("last-modified") != null) conn.setRequestProperty("If-Modified-Since", meta.getProperty("last-modified"));
+			}
+
+			final int status = conn.getResponseCode();
+			if (status == HttpURLConnection.HTTP_NOT_MODIFIED && isCached) {
+				conn.disconnect();
+				writeMeta(metaFile, meta);
+				return reported(url, start, HelpMetrics.FetchOutcome.NOT_MODIFIED, file);
+			}
+			if (status != HttpURLConnection.HTTP_OK) {
+				conn.disconnect();
+				throw new IOException("HTTP status "+status+" for "+url);
+			}
+
+			Files.createDirectories(file.getParent());
+			final Path tmpFile = Files.createTempFile(file.getParent(), "download", ".tmp");
+			try (InputStream is = conn.getInputStream()) {
+				Files.copy(is, tmpFile, StandardCopyOption.REPLACE_EXISTING);
+				store(tmpFile, file);
+			} finally {
+				Files.deleteIfExists(tmpFile);
+			}
+
+			final Properties newMeta = new Properties();
+			newMeta.setProperty("url", url.toExternalForm());
+			if (conn.getHeaderField("ETag") != null) newMeta.setProperty("etag", conn.getHeaderField("ETag"));
+			if (conn.getHeaderField("Last-Modified") != null) newMeta.setProperty("last-modified", conn.getHeaderField("Last-Modified"));
+			if (conn.getContentType() != null) newMeta.setProperty("content-type", conn.getContentType());
+			writeMeta(metaFile, newMeta);
+			grown(Files.size(file));
+			return reported(url, start, HelpMetrics.FetchOutcome.DOWNLOADED, file);
+		} catch (IOException e) {
+			if (isCached) {
+				//NB: serving the stale content (e.g., when offline) is better than nothing
+				touch(metaFile);
+				return reported(url, start, HelpMetrics.FetchOutcome.STALE, file);
+			}
+			reported(url, start, HelpMetrics.FetchOutcome.FAILED, null);
+			throw e;
+		}
+	}
+
+	/** Folder (in the cache folder) with the content of the cached files, one file per distinct content. */
+	static final String BLOBS_FOLDER = ".blobs";
+
+	/**
+	 * Moves the downloaded content into the cache. If the file system supports hard links, the content is
+	 * stored under its hash in the {@link RemoteHelpCache#BLOBS_FOLDER} and the cached file is only a link to it,
+	 * so the same content downloaded from several URLs occupies the disk only once.
+	 */
+	private void store(final Path tmpFile, final Path file) throws IOException {
+		if (!file.getFileSystem().supportedFileAttributeViews().contains("unix")) {
+			Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return;
+		}
+
+		final String hash = TopicManifest.sha1(ByteBuffer.wrap(Files.readAllBytes(tmpFile)));
+		//NB: the blob must not be purged as unused before it's linked
+		synchronized (this) {
+			final Path blob = cacheFolder.resolve(BLOBS_FOLDER).resolve(hash);
+			Files.createDirectories(blob.getParent());
+			if (!Files.exists(blob)) Files.move(tmpFile, blob, StandardCopyOption.ATOMIC_MOVE);
+
+			//the link is created aside and then replaces the (possibly existing) file atomically
+			final Path link = tmpFile.resolveSibling(tmpFile.getFileName() + ".link");
+			try {
+				Files.createLink(link, blob);
+				Files.move(link, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException | UnsupportedOperationException e) {
+				Files.deleteIfExists(link);
+				Files.copy(blob, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+	}
+
+	private static Path reported(final URL url, final long start, final HelpMetrics.FetchOutcome outcome, final Path file) {
+		HelpManager.metrics.remoteFetched(url, System.nanoTime() - start, outcome);
+		return file;
+	}
+
+	/**
+	 * @param url URL of the content.
+	 * @return Local copy of the content, or null if it isn't cached.
+	 */
+	public Path getCached(final URL url) {
+		final Path file = cachedFile(url);
+		return Files.exists(file) ? file : null;
+	}
+
+	/** Protocol of the URLs of the cached content, see {@link RemoteHelpCache#getCachedUrl(URL)}. */
+	static final String CACHED_PROTOCOL = "local-gui-help-cache";
+
+	/** Serves the URLs of the cached content, including the URLs resolved against them, from the cached files. */
+	private final URLStreamHandler cachedContent = new URLStreamHandler() {
+		@Override
+		protected URLConnection openConnection(final URL u) throws IOException {
+			//NB: the protocol is not part of the cached file
+			final Path file = cachedFile(new URL("http", u.getHost(), u.getPort(), u.getFile()));
+			return new URLConnection(u) {
+				@Override
+				public void connect() throws IOException {
+					if (!Files.exists(file)) throw new IOException("Not cached: "+u);
+				}
+
+				@Override
+				public InputStream getInputStream() throws IOException {
+					return Files.newInputStream(file);
+				}
+
+				@Override
+				public String getContentType() {
+					final Properties meta = readMeta(file.resolveSibling(file.getFileName() + META_SUFFIX));
+					String type = meta != null ? meta.getProperty("content-type") : null;
+					if (type == null) type = guessContentTypeFromName(u.getPath());
+					return type != null ? type : "text/html";
+				}
+			};
+		}
+	};
+
+	/**
+	 * The cached content is to be opened (e.g., shown in a {@link javax.swing.JEditorPane}) from this URL,
+	 * as the links (resolved against this URL) lead to the cached content too, unlike with the URL of the cached file.
+	 * @param url URL of the content.
+	 * @return URL of the cached content, which is readable only if the content is cached.
+	 * @throws MalformedURLException If the given URL has no host.
+	 */
+	public URL getCachedUrl(final URL url) throws MalformedURLException {
+		if (url.getHost() == null || url.getHost().isEmpty()) throw new MalformedURLException("No host in "+url);
+		return new URL(CACHED_PROTOCOL, url.getHost(), url.getPort(), url.getFile(), cachedContent);
+	}
+
+	/** Appended to the names of the cached files, a suffix that the folders never have. */
+	static final String FILE_SUFFIX = "~";
+
+	/** Maps the URL into a (not necessarily existing) file in the cache folder. */
+	synchronized Path cachedFile(final URL url) {
+		String host = url.getHost().replaceAll("[^A-Za-z0-9.-]", "_");
+		if (url.getPort() != -1) host += "_" + url.getPort();
+		Path file = cacheFolder.resolve(host);
+
+		String path = url.getPath();
+		if (path.isEmpty() || path.endsWith("/")) path += "index.html";
+		for (String segment : path.split("/")) {
+			if (segment.isEmpty() || segment.equals(".") || segment.equals("..")) continue;
+			file = file.resolve(segment.replaceAll("[^A-Za-z0-9._-]", "_"));
+		}
+		String fileName = file.getFileName().toString();
+		if (url.getQuery() != null) fileName += "_" + Integer.toHexString(url.getQuery().hashCode());
+		//NB: the sanitized segments never contain the suffix, so "host/a" and "host/a/b" do not clash
+		return file.resolveSibling(fileName + FILE_SUFFIX);
+	}
+
+	static List<URL> listLinkedResources(final Path page, final URL pageUrl) throws IOException {
+		final Set<URL> links = new LinkedHashSet<>();
+		final HTMLEditorKit.ParserCallback collector = new HTMLEditorKit.ParserCallback() {
+			@Override
+			public void handleSimpleTag(HTML.Tag t, MutableAttributeSet a, int pos) {
+				if (t == HTML.Tag.IMG) addLink(a.getAttribute(HTML.Attribute.SRC));
+				else if (t == HTML.Tag.LINK && "stylesheet".equalsIgnoreCase(String.valueOf(a.getAttribute(HTML.Attribute.REL))))
+					addLink(a.getAttribute(HTML.Attribute.HREF));
+			}
+			@Override
+			public void handleStartTag(HTML.Tag t, MutableAttributeSet a, int pos) {
+				handleSimpleTag(t, a, pos);
+			}
+			void addLink(final Object link) {
+				if (link == null) return;
+				try {
+					final URL url = new URL(pageUrl, link.toString());
+					if (url.getHost().equalsIgnoreCase(pageUrl.getHost())) links.add(url);
+				} catch (IOException ignored) {}
+			}
+		};
+		try (Reader r = Files.newBufferedReader(page, StandardCharsets.ISO_8859_1)) {
+			new ParserDelegator().parse(r, collector, true);
+		}
+		return new ArrayList<>(links);
+	}
+
+	private static Properties readMeta(final Path metaFile) {
+		if (!Files.exists(metaFile)) return null;
+		try (InputStream is = Files.newInputStream(metaFile)) {
+			final Properties p = new Properties();
+			p.load(is);
+			return p;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private synchronized boolean isFresh(final Properties meta) {
+		try {
+			return System.currentTimeMillis() - Long.parseLong(meta.getProperty("validated", "0")) < revalidationInterval;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/** Stores the validators, and marks the content as just validated. */
+	private static void writeMeta(final Path metaFile, final Properties meta) throws IOException {
+		meta.setProperty("validated", String.valueOf(System.currentTimeMillis()));
+		try (OutputStream os = Files.newOutputStream(metaFile)) {
+			meta.store(os, null);
+		}
+	}
+
+	/** Marks the cached file (via its sidecar file) as recently used. */
+	private static void touch(final Path metaFile) {
+		try {
+			Files.setLastModifiedTime(metaFile, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException ignored) {}
+	}
+
+	/**
+	 * Size of the cache on the disk, or -1 if not known yet. It's only an estimate as it grows with every
+	 * download, not considering the replaced or shared content, and it's measured again by every eviction.
+	 */
+	private long cacheSize = -1;
+	/** Files that were served since the last eviction, which must not be evicted then. */
+	private final Set<Path> servedFiles = new HashSet<>();
+	private boolean evictionScheduled = false;
+
+	private synchronized void grown(final long bytes) {
+		if (cacheSize >= 0) cacheSize += bytes;
+	}
+
+	/**
+	 * Schedules the eviction in the background if the cache is (possibly) over its bound.
+	 * @param served The files that are being served, and must therefore be kept.
+	 */
+	private synchronized void evictIfOverBound(final Set<Path> served) {
+		servedFiles.addAll(served);
+		if (evictionScheduled || (cacheSize >= 0 && cacheSize <= maxCacheSize)) return;
+		evictionScheduled = true;
+		fetcher.execute(() -> {
+			final Set<Path> keep;
+			synchronized (RemoteHelpCache.this) {
+				keep = new HashSet<>(servedFiles);
+				servedFiles.clear();
+				evictionScheduled = false;
+			}
+			evictOverBound(keep);
+		});
+	}
+
+	/**
+	 * Removes the least recently used files until the cache fits its size bound.
+	 * @param keep The files that must not be removed.
+	 */
+	void evictOverBound(final Set<Path> keep) {
+		final Path folder;
+		final long maxSize;
+		synchronized (this) {
+			folder = cacheFolder;
+			maxSize = maxCacheSize;
+		}
+		if (!Files.isDirectory(folder)) return;
+		final List<Path> metaFiles;
+		try (Stream<Path> files = Files.walk(folder)) {
+			metaFiles = files.filter(p -> p.getFileName().toString().endsWith(META_SUFFIX)).collect(Collectors.toList());
+		} catch (IOException | UncheckedIOException e) {
+			//NB: e.g., a folder was removed while walking
+			return;
+		}
+
+		//NB: the files linked to the same blob occupy the disk only once
+		long totalSize = 0;
+		final Map<Object, Integer> links = new HashMap<>();
+		final List<CachedFile> cachedFiles = new ArrayList<>(metaFiles.size());
+		for (Path meta : metaFiles) {
+			try {
+				final CachedFile f = new CachedFile(meta);
+				if (f.contentKey == null || links.merge(f.contentKey, 1, Integer::sum) == 1) totalSize += f.size;
+				cachedFiles.add(f);
+			} catch (IOException ignored) {}
+		}
+
+		synchronized (this) {
+			if (totalSize > maxSize) {
+				cachedFiles.sort(Comparator.comparing(f -> f.lastUsed));
+				for (CachedFile f : cachedFiles) {
+					if (totalSize <= maxSize) break;
+					try {
+						//NB: the files used since they were listed are not evicted either
+						if (keep.contains(f.file) || servedFiles.contains(f.file)
+								|| !f.lastUsed.equals(Files.getLastModifiedTime(f.metaFile))) continue;
+						Files.deleteIfExists(f.file);
+						Files.deleteIfExists(f.metaFile);
+						if (f.contentKey == null || links.merge(f.contentKey, -1, Integer::sum) == 0) totalSize -= f.size;
+					} catch (IOException ignored) {}
+				}
+			}
+			purgeUnusedBlobs();
+			cacheSize = totalSize;
+		}
+	}
+
+	/** Removes the blobs that are no longer linked from any cached file (that were evicted or replaced). */
+	private void purgeUnusedBlobs() {
+		final Path blobs = cacheFolder.resolve(BLOBS_FOLDER);
+		if (!Files.isDirectory(blobs)) return;
+		try (Stream<Path> s = Files.list(blobs)) {
+			for (Path blob : s.collect(Collectors.toList())) {
+				if (((Number)Files.getAttribute(blob, "unix:nlink")).intValue() <= 1) Files.deleteIfExists(blob);
+			}
+		} catch (IOException | UnsupportedOperationException | IllegalArgumentException ignored) {}
+	}
+
+	private static class CachedFile {
+		final Path metaFile;
+		final Path file;
+		final FileTime lastUsed;
+		final long size;
+		/** Identifies the content on the disk (shared by the hard links), or null if not supported. */
+		final Object contentKey;
+
+		CachedFile(final Path metaFile) throws IOException {
+			final String metaName = metaFile.getFileName().toString();
+			this.metaFile = metaFile;
+			this.file = metaFile.resolveSibling(metaName.substring(0, metaName.length()-META_SUFFIX.length()));
+			this.lastUsed = Files.getLastModifiedTime(metaFile);
+			final BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+			this.size = attrs.size();
+			this.contentKey = attrs.fileKey();
+		}
+	}
+}
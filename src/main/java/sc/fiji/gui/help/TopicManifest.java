@@ -0,0 +1,209 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compact description of the pages of one local help topic: the number of its pages, and the sizes,
+ * SHA-1 hashes and (for images) dimensions of its files. The manifest is stored as the file
+ * {@link TopicManifest#FILE_NAME} in the topic folder, and it's created at build time
+ * (see the {@link TopicManifest#main(String[])} and the pom.xml) so that nothing needs to be
+ * probed at runtime. Topics without the manifest still work, the pages are only probed then.
+ */
+public class TopicManifest {
+	public static final String FILE_NAME = "topic.manifest";
+
+	/** The page file types, including the pointers to remote content (the ".url" files). */
+	static final String[] PAGE_FILE_SUFFIXES = { ".html", ".png", ".html.url", ".png.url" };
+
+	private final Properties entries;
+
+	TopicManifest(final Properties entries) {
+		this.entries = entries;
+	}
+
+	/** @return The number of pages of the topic. */
+	public int getNumberOfPages() {
+		return Integer.parseInt(entries.getProperty("pages", "0"));
+	}
+
+	/** @return The size of the file in bytes, or -1 if the file is not listed. */
+	public long getSize(final String fileName) {
+		return Long.parseLong(entries.getProperty(fileName+".size", "-1"));
+	}
+
+	/** @return The SHA-1 hash of the file content (as a hex string), or null if the file is not listed. */
+	public String getHash(final String fileName) {
+		return entries.getProperty(fileName+".sha1");
+	}
+
+	/** @return The width of the image file, or -1 if the file is not listed or not an image. */
+	public int getImageWidth(final String fileName) {
+		return Integer.parseInt(entries.getProperty(fileName+".width", "-1"));
+	}
+
+	/** @return The height of the image file, or -1 if the file is not listed or not an image. */
+	public int getImageHeight(final String fileName) {
+		return Integer.parseInt(entries.getProperty(fileName+".height", "-1"));
+	}
+
+	/** @return True if the file is listed in the manifest. */
+	public boolean contains(final String fileName) {
+		return entries.containsKey(fileName+".size");
+	}
+
+	/**
+	 * Reads the manifest of the given topic.
+	 * @param topic Pages of the topic.
+	 * @return The manifest, or null if the topic has no (readable) manifest.
+	 */
+	public static TopicManifest read(final HelpPagesSource topic) {
+		if (!topic.exists(FILE_NAME)) return null;
+		try (InputStream is = HelpPagesSource.asStream(topic.read(FILE_NAME))) {
+			final Properties p = new Properties();
+			p.load(is);
+			return new TopicManifest(p);
+		} catch (IOException | IllegalArgumentException e) {
+			System.err.println("Failed reading the manifest "+topic.describe(FILE_NAME)+": "+e.getMessage());
+			return null;
+		}
+	}
+
+	// ==================================================================================================================
+	/**
+	 * Scans the topic folder and describes its pages.
+	 * @param topic Pages of the topic.
+	 * @return A new manifest.
+	 * @throws IOException If some page could not be read.
+	 */
+	public static TopicManifest create(final HelpPagesSource topic) throws IOException {
+		final Properties p = new Properties();
+		int pageNo = 1;
+		while (HelpPagesCache.pageExists(topic, pageNo)) {
+			for (String suffix : PAGE_FILE_SUFFIXES) {
+				final String fileName = pageNo + suffix;
+				if (!topic.exists(fileName)) continue;
+
+				final ByteBuffer content = topic.read(fileName);
+				p.setProperty(fileName+".size", String.valueOf(content.remaining()));
+				p.setProperty(fileName+".sha1", sha1(content));
+				if (suffix.equals(".png")) {
+					final int[] dims = readImageDimensions(content);
+					if (dims != null) {
+						p.setProperty(fileName+".width", String.valueOf(dims[0]));
+						p.setProperty(fileName+".height", String.valueOf(dims[1]));
+					}
+				}
+			}
+			++pageNo;
+		}
+		p.setProperty("pages", String.valueOf(pageNo-1));
+		return new TopicManifest(p);
+	}
+
+	public void write(final Path file) throws IOException {
+		try (OutputStream os = Files.newOutputStream(file)) {
+			entries.store(os, "local-gui-help topic manifest");
+		}
+	}
+
+	static String sha1(final ByteBuffer content) {
+		try {
+			final MessageDigest md = MessageDigest.getInstance("SHA-1");
+			md.update(content.duplicate());
+			final StringBuilder sb = new StringBuilder(40);
+			for (byte b : md.digest()) sb.append(String.format("%02x", b));
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("SHA-1 is not available in this JVM.", e);
+		}
+	}
+
+	/** Reads only the header of the image, returns null if it's not a recognized image. */
+	static int[] readImageDimensions(final ByteBuffer content) throws IOException {
+		try (ImageInputStream iis = ImageIO.createImageInputStream(HelpPagesSource.asStream(content))) {
+			final Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+			if (!readers.hasNext()) return null;
+			final ImageReader reader = readers.next();
+			try {
+				reader.setInput(iis);
+				return new int[] { reader.getWidth(0), reader.getHeight(0) };
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * @param folder The folder to be scanned (recursively).
+	 * @return All topic folders, that is, the folders with the first page, in the given folder (including itself).
+	 * @throws IOException If the folder could not be scanned.
+	 */
+	static List<Path> findTopicFolders(final Path folder) throws IOException {
+		try (Stream<Path> s = Files.walk(folder)) {
+			return s.filter(Files::isDirectory)
+					.filter(d -> HelpPagesCache.pageExists(new DirectoryPagesSource(d), 1))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Creates the manifests of all topic folders, that is, of all folders with "1.html" or "1.png"
+	 * (or their ".url" pointers) found (recursively) in the given folders. This is meant to be run
+	 * at build time on the output folder with the resources, see the pom.xml.
+	 * @param args The folders to be scanned.
+	 */
+	public static void main(String[] args) throws IOException {
+		for (String folder : args) {
+			for (Path topic : findTopicFolders(Paths.get(folder))) {
+				final TopicManifest m = create(new DirectoryPagesSource(topic));
+				m.write(topic.resolve(FILE_NAME));
+				System.out.println("Created manifest of "+topic+" with "+m.getNumberOfPages()+" pages.");
+			}
+		}
+	}
+}
@@ -0,0 +1,589 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import javax.imageio.ImageIO;
+import javax.swing.text.MutableAttributeSet;
+import javax.swing.text.html.HTML;
+import javax.swing.text.html.HTMLEditorKit;
+import javax.swing.text.html.parser.ParserDelegator;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Checks the local help topics before they are shipped, without any display: that the pages
+ * form an unbroken sequence, that the markup of the texts is valid (closed tags, known tags and
+ * required attributes, as seen by the HTML renderer of Swing) and their local links resolved, that the
+ * images can be decoded, that the pointers (the ".url" files) lead somewhere, and that the topic
+ * manifest is up to date. The topics, and the pages within them, are checked in parallel (as fork/join tasks).
+ * Optionally, every topic is exported as a static web site at the same time.
+ * <p>
+ * Remote links are only checked on request because they need network access; point the
+ * pointers to a local server to check them offline.
+ */
+public class TopicValidator {
+	public enum Severity { WARNING, ERROR }
+
+	/** One finding about one file of a topic. */
+	public static class Problem {
+		public final Severity severity;
+		public final Path topicFolder;
+		public final String fileName;
+		public final String message;
+
+		Problem(final Severity severity, final Path topicFolder, final String fileName, final String message) {
+			this.severity = severity;
+			this.topicFolder = topicFolder;
+			this.fileName = fileName;
+			this.message = message;
+		}
+
+		@Override
+		public String toString() {
+			return severity+": "+topicFolder.resolve(fileName)+": "+message;
+		}
+	}
+
+	private final ForkJoinPool pool;
+	private boolean checkRemoteLinks = false;
+	private int timeout = 5000;
+	private Path exportFolder = null;
+
+	/** Validates with as many threads as there are processors. */
+	public TopicValidator() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public TopicValidator(final int threads) {
+		pool = new ForkJoinPool(Math.max(threads, 1));
+	}
+
+	/**
+	 * Enables or disables (default) checking that the remote links, found in the pointer files and the
+	 * texts, are reachable.
+	 * @param check True to check the remote links.
+	 */
+	public void setCheckRemoteLinks(final boolean check) {
+		checkRemoteLinks = check;
+	}
+
+	/**
+	 * Sets the timeout of connecting to and reading from the remote links, default is 5 seconds.
+	 * @param millis The timeout in milliseconds.
+	 */
+	public void setTimeout(final int millis) {
+		timeout = millis;
+	}
+
+	/**
+	 * Sets the folder where the topics are exported as static web sites while being validated,
+	 * or null (default) not to export them.
+	 * @param folder The output folder.
+	 */
+	public void setExportFolder(final Path folder) {
+		exportFolder = folder;
+	}
+
+	/** The number of topics and their pages of the last validation. */
+	private int topicsCount = 0, pagesCount = 0;
+
+	// ==================================================================================================================
+	/**
+	 * Validates (and possibly exports) all topics found (recursively) in the given folders.
+	 * @param topicsFolders The folders with the topic folders.
+	 * @return The problems found, the errors first.
+	 * @throws IOException If some folder could not be scanned, or the export folder could not be written.
+	 */
+	public List<Problem> validate(final List<Path> topicsFolders) throws IOException {
+		final Queue<Problem> problems = new ConcurrentLinkedQueue<>();
+		final List<TopicTask> tasks = new ArrayList<>();
+		for (Path folder : topicsFolders) {
+			for (Path topic : TopicManifest.findTopicFolders(folder)) {
+				final Path exportTo = exportFolder == null ? null
+						: exportFolder.resolve(folder.relativize(topic).toString()).normalize();
+				tasks.add(new TopicTask(topic, exportTo, problems));
+			}
+		}
+
+		pool.invoke(new RecursiveAction() {
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+		topicsCount = tasks.size();
+		pagesCount = tasks.stream().mapToInt(t -> t.numberOfPages).sum();
+		if (exportFolder != null) exportIndex(tasks);
+
+		final List<Problem> sorted = new ArrayList<>(problems);
+		sorted.sort(Comparator.comparing((Problem p) -> p.severity).reversed()
+				.thenComparing(p -> p.topicFolder)
+				.thenComparing(p -> p.fileName));
+		return sorted;
+	}
+
+	/** Checks the sequence of pages and the manifest of one topic, and forks the checks of its pages. */
+	@SuppressWarnings("serial")
+	private class TopicTask extends RecursiveAction {
+		final Path folder;
+		final Path exportTo;
+		final Queue<Problem> problems;
+		int numberOfPages = 0;
+
+		TopicTask(final Path folder, final Path exportTo, final Queue<Problem> problems) {
+			this.folder = folder;
+			this.exportTo = exportTo;
+			this.problems = problems;
+		}
+
+		void report(final Severity severity, final String fileName, final String message) {
+			problems.add(new Problem(severity, folder, fileName, message));
+		}
+
+		@Override
+		protected void compute() {
+			final DirectoryPagesSource topic = new DirectoryPagesSource(folder);
+
+			final List<String> fileNames;
+			try (Stream<Path> s = Files.list(folder)) {
+				fileNames = s.filter(Files::isRegularFile).map(f -> f.getFileName().toString()).collect(Collectors.toList());
+			} catch (IOException e) {
+				report(Severity.ERROR, "", "Failed listing the topic: "+e.getMessage());
+				return;
+			}
+
+			//NB: the manifest's count of pages is used at runtime, the files are counted here
+			int lastPage = 0;
+			while (HelpPagesCache.pageExists(topic, lastPage+1)) ++lastPage;
+			final TopicManifest manifest = topic.exists(TopicManifest.FILE_NAME) ? TopicManifest.read(topic) : null;
+			if (manifest != null && manifest.getNumberOfPages() != lastPage) {
+				report(Severity.ERROR, TopicManifest.FILE_NAME, "The manifest lists "+manifest.getNumberOfPages()
+						+" pages but there are "+lastPage+", re-create the manifest.");
+			}
+			for (String fileName : fileNames) {
+				final int pageNo = TopicWatcher.pageNoOf(fileName);
+				if (pageNo > lastPage) {
+					report(Severity.WARNING, fileName, "The file is never shown because page "+(lastPage+1)+" is missing.");
+				}
+			}
+
+			if (exportTo != null) {
+				try {
+					Files.createDirectories(exportTo);
+				} catch (IOException e) {
+					report(Severity.ERROR, "", "Failed exporting the topic: "+e.getMessage());
+				}
+			}
+
+			final List<PageTask> pages = new ArrayList<>(lastPage);
+			for (int pageNo = 1; pageNo <= lastPage; ++pageNo) {
+				pages.add(new PageTask(this, topic, manifest, pageNo, pageNo == lastPage));
+			}
+			invokeAll(pages);
+			numberOfPages = lastPage;
+		}
+	}
+
+	/** Checks the files of one page, and exports the page. */
+	@SuppressWarnings("serial")
+	private class PageTask extends RecursiveAction {
+		final TopicTask topicTask;
+		final DirectoryPagesSource topic;
+		final TopicManifest manifest;
+		final int pageNo;
+		final boolean isLastPage;
+
+		PageTask(final TopicTask topicTask, final DirectoryPagesSource topic, final TopicManifest manifest,
+		         final int pageNo, final boolean isLastPage) {
+			this.topicTask = topicTask;
+			this.topic = topic;
+			this.manifest = manifest;
+			this.pageNo = pageNo;
+			this.isLastPage = isLastPage;
+		}
+
+		@Override
+		protected void compute() {
+			for (String suffix : TopicManifest.PAGE_FILE_SUFFIXES) checkManifest(pageNo + suffix);
+
+			final String htmlFileName = pageNo + ".html";
+			String html = null;
+			if (!HelpPagesCache.pageFileExists(topic, htmlFileName)) {
+				topicTask.report(Severity.WARNING, htmlFileName, "The page has no text, a placeholder is shown instead.");
+			} else {
+				html = checkText(htmlFileName);
+			}
+
+			final int[] dims = checkImage(pageNo + ".png");
+			final int[] hiDpiDims = checkImage(pageNo + "@2x.png");
+			if (dims != null && hiDpiDims != null
+					&& (Math.abs(hiDpiDims[0] - 2*dims[0]) > 1 || Math.abs(hiDpiDims[1] - 2*dims[1]) > 1)) {
+				topicTask.report(Severity.WARNING, pageNo + "@2x.png", "The image is not twice the size of "
+						+pageNo+".png ("+hiDpiDims[0]+"x"+hiDpiDims[1]+" vs. "+dims[0]+"x"+dims[1]+").");
+			}
+
+			if (topicTask.exportTo != null) exportPage(html);
+		}
+
+		void checkManifest(final String fileName) {
+			if (manifest == null || !topic.exists(fileName)) return;
+			try {
+				final ByteBuffer content = topic.read(fileName);
+				if (!manifest.contains(fileName)) {
+					topicTask.report(Severity.ERROR, fileName, "The file is not listed in the manifest, re-create the manifest.");
+				} else if (manifest.getSize(fileName) != content.remaining()
+						|| !TopicManifest.sha1(content).equals(manifest.getHash(fileName))) {
+					topicTask.report(Severity.ERROR, fileName, "The file differs from the manifest, re-create the manifest.");
+				}
+			} catch (IOException e) {
+				topicTask.report(Severity.ERROR, fileName, "Failed reading the file: "+e.getMessage());
+			}
+		}
+
+		/** @return The text of the page, or null if it could not be read. */
+		String checkText(final String fileName) {
+			final ByteBuffer content = readFile(fileName);
+			if (content == null) return null;
+			final String html = StandardCharsets.UTF_8.decode(content).toString();
+
+			final List<String> links = new ArrayList<>();
+			final HTMLEditorKit.ParserCallback collector = new HTMLEditorKit.ParserCallback() {
+				@Override
+				public void handleSimpleTag(HTML.Tag t, MutableAttributeSet a, int pos) {
+					if (t == HTML.Tag.IMG) addLink(a.getAttribute(HTML.Attribute.SRC));
+					else if (t == HTML.Tag.A) addLink(a.getAttribute(HTML.Attribute.HREF));
+				}
+				@Override
+				public void handleStartTag(HTML.Tag t, MutableAttributeSet a, int pos) {
+					handleSimpleTag(t, a, pos);
+				}
+				void addLink(final Object link) {
+					if (link != null) links.add(link.toString().trim());
+				}
+				@Override
+				public void handleError(String errorMsg, int pos) {
+					checkMarkup(fileName, errorMsg, lineOf(html, pos));
+				}
+			};
+			try {
+				new ParserDelegator().parse(new StringReader(html), collector, true);
+			} catch (IOException | RuntimeException e) {
+				topicTask.report(Severity.ERROR, fileName, "The text cannot be parsed: "+e.getMessage());
+				return html;
+			}
+
+			for (String link : links) {
+				if (link.isEmpty() || link.startsWith("#") || link.startsWith("mailto:")) continue;
+				if (link.startsWith("http://") || link.startsWith("https://")) {
+					if (checkRemoteLinks) checkUrl(fileName, link);
+				} else if (!link.contains(":")) {
+					final String path = link.split("[#?]", 2)[0];
+					if (!path.isEmpty() && !Files.exists(topic.getTopicFolder().resolve(path))) {
+						topicTask.report(Severity.ERROR, fileName, "The link "+link+" leads to no file.");
+					}
+				}
+			}
+			return html;
+		}
+
+		/**
+		 * Reports the problems of the markup found by the (lenient) HTML 3.2 parser of Swing, the same one that
+		 * renders the text: tags that are not closed or have no start, unknown tags and missing required attributes.
+		 * @param errorMsg The parser's message, its key followed by its arguments, e.g., "end.missing b ? ?".
+		 */
+		void checkMarkup(final String fileName, final String errorMsg, final int line) {
+			final String[] msg = errorMsg.trim().split("\\s+");
+			final String arg = msg.length > 1 ? msg[1] : "?";
+			final String at = " (around line "+line+")";
+			switch (msg[0]) {
+			case "end.missing":
+				topicTask.report(Severity.ERROR, fileName, "The tag <"+arg+"> is not closed"+at+".");
+				break;
+			case "unmatched.endtag":
+				topicTask.report(Severity.ERROR, fileName, "The end tag </"+arg+"> has no start tag"+at+".");
+				break;
+			case "tag.unrecognized":
+				topicTask.report(Severity.WARNING, fileName, "The tag <"+arg+"> is unknown, it is not shown"+at+".");
+				break;
+			case "end.unrecognized":
+				break; //NB: reported already with its start tag
+			case "start.missing":
+				break; //NB: texts are typically only fragments of html documents
+			case "req.att":
+				topicTask.report(Severity.ERROR, fileName, "The tag <"+(msg.length > 2 ? msg[2] : "?")
+						+"> has no "+arg+" attribute"+at+".");
+				break;
+			default:
+				topicTask.report(Severity.WARNING, fileName, "The markup is not valid: "+errorMsg.trim()+at+".");
+			}
+		}
+
+		/** @return The dimensions of the decoded image, or null if there's no such image or it could not be decoded. */
+		int[] checkImage(final String fileName) {
+			if (!HelpPagesCache.pageFileExists(topic, fileName)) return null;
+			final ByteBuffer content = readFile(fileName);
+			if (content == null) return null;
+			try {
+				final BufferedImage img = ImageIO.read(HelpPagesSource.asStream(content));
+				if (img != null) return new int[] { img.getWidth(), img.getHeight() };
+				topicTask.report(Severity.ERROR, fileName, "The image has an unrecognized format.");
+			} catch (IOException | RuntimeException e) {
+				topicTask.report(Severity.ERROR, fileName, "The image cannot be decoded: "+e.getMessage());
+			}
+			return null;
+		}
+
+		/**
+		 * Reads the file, or checks where its pointer leads. Remote content is never downloaded.
+		 * @return The content of the local file, or null if there's none.
+		 */
+		ByteBuffer readFile(final String fileName) {
+			if (!topic.exists(fileName)) {
+				final String pointerFileName = fileName + HelpPagesCache.POINTER_SUFFIX;
+				try {
+					final String pointer = StandardCharsets.UTF_8.decode(topic.read(pointerFileName)).toString().trim();
+					final String url = pointer.split("\\s+", 2)[0];
+					if (url.startsWith("http://") || url.startsWith("https://")) {
+						if (checkRemoteLinks) checkUrl(pointerFileName, url);
+						return null;
+					}
+					try (InputStream is = new URL(url).openStream()) {
+						return ByteBuffer.wrap(readAll(is));
+					}
+				} catch (IOException e) {
+					topicTask.report(Severity.ERROR, pointerFileName, "The pointer leads nowhere: "+e.getMessage());
+					return null;
+				}
+			}
+			if (topic.exists(fileName + HelpPagesCache.POINTER_SUFFIX)) {
+				topicTask.report(Severity.WARNING, fileName + HelpPagesCache.POINTER_SUFFIX,
+						"The pointer is never used because the file "+fileName+" exists.");
+			}
+			try {
+				return topic.read(fileName);
+			} catch (IOException e) {
+				topicTask.report(Severity.ERROR, fileName, "Failed reading the file: "+e.getMessage());
+				return null;
+			}
+		}
+
+		void checkUrl(final String fileName, final String link) {
+			try {
+				final URLConnection c = new URL(link).openConnection();
+				c.setConnectTimeout(timeout);
+				c.setReadTimeout(timeout);
+				if (c instanceof HttpURLConnection) {
+					final HttpURLConnection http = (HttpURLConnection)c;
+					http.setRequestMethod("HEAD");
+					final int status = http.getResponseCode();
+					http.disconnect();
+					if (status >= 400) topicTask.report(Severity.ERROR, fileName, "The link "+link+" responds with "+status+".");
+				}
+			} catch (IOException e) {
+				topicTask.report(Severity.ERROR, fileName, "The link "+link+" is unreachable: "+e.getMessage());
+			}
+		}
+
+		// --------------------------------------------------------------------------------------------------------------
+		/**
+		 * Rewrites the links to the pages of the topic ("N.html") to the exported pages ("page-N.html"),
+		 * and copies the other local files that the text links to into the export.
+		 * @return The text with the rewritten links.
+		 */
+		String exportLinks(final String html) throws IOException {
+			final Path folder = topic.getTopicFolder();
+			final Matcher m = LINK_ATTRIBUTE.matcher(html);
+			final StringBuffer sb = new StringBuffer(html.length());
+			while (m.find()) {
+				final int valueGroup = m.group(3) != null ? 3 : m.group(4) != null ? 4 : 5;
+				final String link = m.group(valueGroup);
+				String exported = link;
+				if (!link.isEmpty() && !link.startsWith("#") && !link.startsWith("/") && !link.contains(":")) {
+					final String[] pathAndRest = link.split("(?=[#?])", 2);
+					final Matcher page = PAGE_FILE.matcher(pathAndRest[0]);
+					if (page.matches() && HelpPagesCache.pageExists(topic, Integer.parseInt(page.group(1)))) {
+						exported = "page-" + page.group(1) + ".html" + (pathAndRest.length > 1 ? pathAndRest[1] : "");
+					} else {
+						//NB: only the files within the topic folder are exported
+						final Path file = folder.resolve(pathAndRest[0]).normalize();
+						if (file.startsWith(folder) && Files.isRegularFile(file)) {
+							final Path target = topicTask.exportTo.resolve(folder.relativize(file).toString());
+							Files.createDirectories(target.getParent());
+							Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+						}
+					}
+				}
+				m.appendReplacement(sb, Matcher.quoteReplacement(
+						html.substring(m.start(), m.start(valueGroup)) + exported + html.substring(m.end(valueGroup), m.end())));
+			}
+			m.appendTail(sb);
+			return sb.toString();
+		}
+
+		void exportPage(final String html) {
+			final Path out = topicTask.exportTo;
+			final String title = HelpSearchDialog.HitRenderer.escape(topic.getTopicFolder().getFileName().toString());
+			final StringBuilder sb = new StringBuilder();
+			sb.append("<!DOCTYPE html>\n<html><head><meta charset=\"UTF-8\"><title>").append(title)
+					.append(" &mdash; page ").append(pageNo).append("</title></head><body>\n<nav>");
+			if (pageNo > 1) sb.append("<a href=\"page-").append(pageNo-1).append(".html\">Previous</a> | ");
+			sb.append("<a href=\"index.html\">").append(title).append("</a>");
+			if (!isLastPage) sb.append(" | <a href=\"page-").append(pageNo+1).append(".html\">Next</a>");
+			sb.append("</nav>\n");
+
+			try {
+				final String imageFileName = pageNo + ".png";
+				final String hiDpiFileName = pageNo + "@2x.png";
+				if (topic.exists(imageFileName)) {
+					Files.copy(topic.getTopicFolder().resolve(imageFileName), out.resolve(imageFileName),
+							StandardCopyOption.REPLACE_EXISTING);
+					sb.append("<img src=\"").append(imageFileName).append("\"");
+					if (topic.exists(hiDpiFileName)) {
+						Files.copy(topic.getTopicFolder().resolve(hiDpiFileName), out.resolve(hiDpiFileName),
+								StandardCopyOption.REPLACE_EXISTING);
+						sb.append(" srcset=\"").append(hiDpiFileName).append(" 2x\"");
+					}
+					sb.append(">\n");
+				} else if (topic.exists(imageFileName + HelpPagesCache.POINTER_SUFFIX)) {
+					//NB: remote images are linked, not downloaded
+					final String pointer = StandardCharsets.UTF_8
+							.decode(topic.read(imageFileName + HelpPagesCache.POINTER_SUFFIX)).toString().trim();
+					sb.append("<img src=\"").append(pointer.split("\\s+", 2)[0]).append("\">\n");
+				}
+				if (html != null) sb.append("<div>").append(exportLinks(html)).append("</div>\n");
+				sb.append("</body></html>\n");
+				Files.write(out.resolve("page-"+pageNo+".html"), sb.toString().getBytes(StandardCharsets.UTF_8));
+			} catch (IOException e) {
+				topicTask.report(Severity.ERROR, pageNo + ".html", "Failed exporting the page: "+e.getMessage());
+			}
+		}
+	}
+
+	/** The href and src attributes, with their (double-quoted, single-quoted or unquoted) values as the groups 3-5. */
+	private static final Pattern LINK_ATTRIBUTE = Pattern.compile(
+			"(?i)\\b(href|src)(\\s*=\\s*)(?:\"([^\"]*)\"|'([^']*)'|([^\\s>\"']+))");
+	private static final Pattern PAGE_FILE = Pattern.compile("([1-9][0-9]*)\\.html");
+
+	/** Writes the index of every exported topic, and the index of all topics. */
+	private void exportIndex(final List<TopicTask> tasks) throws IOException {
+		final StringBuilder all = new StringBuilder("<!DOCTYPE html>\n<html><head><meta charset=\"UTF-8\">"
+				+"<title>Help topics</title></head><body>\n<h1>Help topics</h1>\n<ul>\n");
+		for (TopicTask t : tasks) {
+			if (t.numberOfPages == 0) continue;
+			final String title = HelpSearchDialog.HitRenderer.escape(t.folder.getFileName().toString());
+			final StringBuilder sb = new StringBuilder("<!DOCTYPE html>\n<html><head><meta charset=\"UTF-8\"><title>")
+					.append(title).append("</title></head><body>\n<h1>").append(title).append("</h1>\n<ol>\n");
+			for (int pageNo = 1; pageNo <= t.numberOfPages; ++pageNo) {
+				sb.append("<li><a href=\"page-").append(pageNo).append(".html\">Page ").append(pageNo).append("</a></li>\n");
+			}
+			sb.append("</ol>\n</body></html>\n");
+			Files.write(t.exportTo.resolve("index.html"), sb.toString().getBytes(StandardCharsets.UTF_8));
+
+			final String link = exportFolder.relativize(t.exportTo).toString().replace(t.exportTo.getFileSystem().getSeparator(), "/");
+			all.append("<li><a href=\"").append(link.isEmpty() ? "" : link+"/").append("index.html\">")
+					.append(HelpSearchDialog.HitRenderer.escape(link.isEmpty() ? title : link)).append("</a></li>\n");
+		}
+		all.append("</ul>\n</body></html>\n");
+		Files.write(exportFolder.resolve("index.html"), all.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/** @return The (1-based) number of the line that contains the given position. */
+	static int lineOf(final String text, final int pos) {
+		int line = 1;
+		for (int i = 0; i < pos && i < text.length(); ++i) if (text.charAt(i) == '\n') ++line;
+		return line;
+	}
+
+	static byte[] readAll(final InputStream is) throws IOException {
+		final ByteArrayOutputStream content = new ByteArrayOutputStream();
+		final byte[] chunk = new byte[1 << 16];
+		int len;
+		while ((len = is.read(chunk)) > 0) content.write(chunk, 0, len);
+		return content.toByteArray();
+	}
+
+	// ==================================================================================================================
+	/**
+	 * Validates the topics found in the given folders, prints the problems, and exits with 1 if there were errors.
+	 * Usage: TopicValidator [--remote] [--export outputFolder] [--threads N] topicsFolder...
+	 */
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+		final List<Path> folders = new ArrayList<>();
+		boolean checkRemote = false;
+		Path exportFolder = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		for (int i = 0; i < args.length; ++i) {
+			if (args[i].equals("--remote")) checkRemote = true;
+			else if (args[i].equals("--export") && i+1 < args.length) exportFolder = Paths.get(args[++i]);
+			else if (args[i].equals("--threads") && i+1 < args.length) threads = Integer.parseInt(args[++i]);
+			else folders.add(Paths.get(args[i]));
+		}
+		if (folders.isEmpty()) {
+			System.out.println("Usage: TopicValidator [--remote] [--export outputFolder] [--threads N] topicsFolder...");
+			return;
+		}
+
+		final long start = System.currentTimeMillis();
+		final TopicValidator validator = new TopicValidator(threads);
+		validator.setCheckRemoteLinks(checkRemote);
+		validator.setExportFolder(exportFolder);
+		final List<Problem> problems = validator.validate(folders);
+		for (Problem p : problems) System.out.println(p);
+
+		final long errors = problems.stream().filter(p -> p.severity == Severity.ERROR).count();
+		System.out.println("Validated "+validator.topicsCount+" topics with "+validator.pagesCount+" pages in "
+				+(System.currentTimeMillis()-start)+" ms using "+threads+" threads: "
+				+errors+" errors, "+(problems.size()-errors)+" warnings.");
+		if (errors > 0) System.exit(1);
+	}
+}
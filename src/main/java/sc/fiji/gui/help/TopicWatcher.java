@@ -0,0 +1,258 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import javax.swing.SwingUtilities;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+
+/**
+ * Watches the folders of the local help topics for changes made by their authors, and drops from
+ * the caches only the pages whose files have changed. The open help windows of the changed topics
+ * are notified to re-show their current page if it was among the changed ones. A burst of changes
+ * (e.g., saving many files at once) is handled only after it has settled, as one change.
+ * <p>
+ * Watching is disabled by default, and can be enabled with {@link TopicWatcher#setEnabled(boolean)}
+ * or by starting the application with <code>-Dlocal-gui-help.watch-topics=true</code>.
+ * Only the folders on the default file system are watched, not the ones inside JAR files.
+ * The manifests of the watched topics are ignored as they do not reflect the edits.
+ */
+public class TopicWatcher {
+	private TopicWatcher() {}
+
+	private static TopicWatcher instance = null;
+
+	/** Returns the one and always the same instance of the topics watcher. */
+	public static synchronized TopicWatcher obtain() {
+		if (instance == null) {
+			instance = new TopicWatcher();
+		}
+		return instance;
+	}
+
+	// ==================================================================================================================
+	/** Consumer of the changed pages of a topic, executed on the EDT. */
+	public interface ChangeListener {
+		/** @param isChanged Tells if a page number belongs to a changed page. */
+		void pagesChanged(IntPredicate isChanged);
+	}
+
+	private boolean enabled = Boolean.getBoolean("local-gui-help.watch-topics");
+	private int settlingTime = 300;
+	private WatchService watchService = null;
+	private final Map<WatchKey, DirectoryPagesSource> watchedTopics = new ConcurrentHashMap<>();
+	private final Map<HelpPagesSource, List<ChangeListener>> listeners = new ConcurrentHashMap<>();
+
+	/**
+	 * Enables or disables (default) the watching of the local topics. Topics are watched from the moment
+	 * their help window is opened (while watching is enabled), disabling stops watching all of them.
+	 * @param enable True to watch the topics.
+	 */
+	public synchronized void setEnabled(final boolean enable) {
+		enabled = enable;
+		if (enable) {
+			//the topics of the already open help windows
+			for (HelpPagesSource topic : listeners.keySet()) watch(topic);
+		} else if (watchService != null) {
+			try {
+				//NB: this also wakes up and terminates the watching thread
+				watchService.close();
+			} catch (IOException e) {
+				//nothing to release then
+			}
+			watchService = null;
+			watchedTopics.clear();
+		}
+	}
+
+	public synchronized boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Sets for how long no further changes must come before the changes are handled, default is 300 ms.
+	 * @param millis The settling time in milliseconds.
+	 */
+	public synchronized void setSettlingTime(final int millis) {
+		settlingTime = Math.max(millis, 0);
+	}
+
+	public synchronized int getSettlingTime() {
+		return settlingTime;
+	}
+
+	/**
+	 * Starts watching the topic, if watching is enabled and the topic is a folder on the default file system.
+	 * @param topic Pages of the topic.
+	 */
+	public synchronized void watch(final HelpPagesSource topic) {
+		if (!enabled || !(topic instanceof DirectoryPagesSource)) return;
+		final DirectoryPagesSource dirTopic = (DirectoryPagesSource)topic;
+		final Path folder = dirTopic.getTopicFolder();
+		if (folder.getFileSystem() != FileSystems.getDefault() || watchedTopics.containsValue(dirTopic)) return;
+
+		try {
+			if (watchService == null) {
+				watchService = folder.getFileSystem().newWatchService();
+				final WatchService service = watchService;
+				final Thread t = new Thread(() -> watchChanges(service), "local-gui-help topics watcher");
+				t.setDaemon(true);
+				t.start();
+			}
+			final WatchKey key = folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+			watchedTopics.put(key, dirTopic);
+			//NB: the manifest was created at build time, it does not reflect the edits of the topic authors
+			HelpPagesCache.obtain().ignoreManifest(dirTopic);
+		} catch (IOException e) {
+			System.err.println("Failed watching the local help "+folder+": "+e.getMessage());
+		}
+	}
+
+	/**
+	 * Registers the listener of the changes of the topic, and starts watching the topic.
+	 * @param topic Pages of the topic.
+	 * @param listener Consumer of the changed pages.
+	 */
+	public void addListener(final HelpPagesSource topic, final ChangeListener listener) {
+		listeners.computeIfAbsent(topic, t -> new CopyOnWriteArrayList<>()).add(listener);
+		watch(topic);
+	}
+
+	/**
+	 * Unregisters the listener of the changes of the topic, and stops watching the topic
+	 * if it was its last listener.
+	 * @param topic Pages of the topic.
+	 * @param listener Consumer of the changed pages.
+	 */
+	public void removeListener(final HelpPagesSource topic, final ChangeListener listener) {
+		listeners.computeIfPresent(topic, (t, l) -> {
+			l.remove(listener);
+			return l.isEmpty() ? null : l;
+		});
+		unwatch(topic);
+	}
+
+	/** Stops watching the topic, unless it has got a listener (again). */
+	private synchronized void unwatch(final HelpPagesSource topic) {
+		if (listeners.containsKey(topic)) return;
+		watchedTopics.entrySet().removeIf(e -> {
+			if (!e.getValue().equals(topic)) return false;
+			e.getKey().cancel();
+			return true;
+		});
+	}
+
+	// ==================================================================================================================
+	/** Stands for all pages of a topic in the sets of changed pages. */
+	private static final int ALL_PAGES = -1;
+
+	private void watchChanges(final WatchService service) {
+		final Map<DirectoryPagesSource, Set<Integer>> changes = new HashMap<>();
+		try {
+			while (true) {
+				collectChanges(service.take(), changes);
+				//the burst of changes is over when nothing has changed for the settling time
+				WatchKey key;
+				while ((key = service.poll(getSettlingTime(), TimeUnit.MILLISECONDS)) != null) {
+					collectChanges(key, changes);
+				}
+				for (Map.Entry<DirectoryPagesSource, Set<Integer>> c : changes.entrySet()) {
+					invalidate(c.getKey(), c.getValue());
+				}
+				changes.clear();
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			//watching has been disabled
+		}
+	}
+
+	private void collectChanges(final WatchKey key, final Map<DirectoryPagesSource, Set<Integer>> changes) {
+		final DirectoryPagesSource topic = watchedTopics.get(key);
+		final List<WatchEvent<?>> events = key.pollEvents();
+		if (!key.reset()) watchedTopics.remove(key);
+		if (topic == null) return;
+
+		final Set<Integer> pageNos = changes.computeIfAbsent(topic, t -> new HashSet<>());
+		for (WatchEvent<?> e : events) {
+			if (e.kind() == StandardWatchEventKinds.OVERFLOW) {
+				pageNos.add(ALL_PAGES);
+			} else {
+				final int pageNo = pageNoOf(((Path)e.context()).getFileName().toString());
+				if (pageNo == 0) continue;
+				pageNos.add(pageNo);
+				//NB: (dis)appearing page changes whether its predecessor is the last page
+				if (e.kind() != StandardWatchEventKinds.ENTRY_MODIFY && pageNo > 1) pageNos.add(pageNo-1);
+			}
+		}
+	}
+
+	/**
+	 * @param fileName Name of a file in the topic folder, e.g., "3.html", "3@2x.png" or "3.png.url".
+	 * @return The page number the file belongs to, {@link TopicWatcher#ALL_PAGES} for the topic manifest,
+	 *         or 0 if the file belongs to no page.
+	 */
+	static int pageNoOf(final String fileName) {
+		if (fileName.equals(TopicManifest.FILE_NAME)) return ALL_PAGES;
+		int digits = 0;
+		while (digits < fileName.length() && Character.isDigit(fileName.charAt(digits))) ++digits;
+		if (digits == 0 || digits > 9) return 0;
+		final String rest = fileName.substring(digits);
+		if (!rest.startsWith(".") && !rest.startsWith("@")) return 0;
+		return Integer.parseInt(fileName.substring(0, digits));
+	}
+
+	private void invalidate(final DirectoryPagesSource topic, final Set<Integer> pageNos) {
+		final boolean allPages = pageNos.contains(ALL_PAGES);
+		final IntPredicate isChanged = allPages ? (p -> true) : pageNos::contains;
+		HelpPagesCache.obtain().invalidate(topic, allPages ? null : pageNos);
+		PageNavigator.invalidateThumbnails(topic, isChanged);
+
+		final List<ChangeListener> topicListeners = listeners.get(topic);
+		if (topicListeners == null) return;
+		SwingUtilities.invokeLater(() -> {
+			for (ChangeListener l : topicListeners) l.pagesChanged(isChanged);
+		});
+	}
+}
@@ -0,0 +1,107 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.swing.JButton;
+import javax.swing.JPanel;
+import java.awt.Point;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes to resolve the help for the given (mocked) mouse pointer positions
+ * when the given number of components is registered. The components are laid out in a grid
+ * (without any window, and thus without any display), together with their container.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HelpKeyLookupBenchmark {
+	static final int CELL_WIDTH = 40;
+	static final int CELL_HEIGHT = 30;
+
+	@Param({"10", "100", "1000", "10000"})
+	int numberOfComponents;
+
+	HelpManager helpManager;
+	Point[] pointerPositions;
+	int nextPosition = 0;
+
+	@Setup
+	public void setup() {
+		helpManager = HeadlessHelpComponentsIndex.createHelpManager();
+		final JPanel root = buildGrid(numberOfComponents);
+		helpManager.registerComponentHelp(root, () -> {});
+		for (int i = 0; i < numberOfComponents; ++i) helpManager.registerComponentHelp(root.getComponent(i), () -> {});
+
+		final Random rnd = new Random(42);
+		pointerPositions = new Point[1024];
+		for (int i = 0; i < pointerPositions.length; ++i) {
+			pointerPositions[i] = new Point(rnd.nextInt(root.getWidth()), rnd.nextInt(root.getHeight()));
+		}
+		//NB: builds the index already here
+		helpManager.findHelpAt(pointerPositions[0], null);
+	}
+
+	@Benchmark
+	public HelpShower lookup() {
+		nextPosition = (nextPosition + 1) & (pointerPositions.length - 1);
+		return helpManager.findHelpAt(pointerPositions[nextPosition], null);
+	}
+
+	/**
+	 * @param numberOfComponents The number of buttons to be created.
+	 * @return A panel with the buttons laid out in a (nearly square) grid, with gaps between the buttons.
+	 */
+	static JPanel buildGrid(final int numberOfComponents) {
+		final int columns = (int)Math.ceil(Math.sqrt(numberOfComponents));
+		final int rows = (numberOfComponents + columns - 1) / columns;
+		final JPanel root = new JPanel(null);
+		root.setBounds(0, 0, columns * CELL_WIDTH, rows * CELL_HEIGHT);
+		for (int i = 0; i < numberOfComponents; ++i) {
+			final JButton b = new JButton(String.valueOf(i));
+			b.setBounds((i % columns) * CELL_WIDTH + 2, (i / columns) * CELL_HEIGHT + 2, CELL_WIDTH - 4, CELL_HEIGHT - 4);
+			root.add(b);
+		}
+		return root;
+	}
+
+	public static void main(String[] args) throws Exception {
+		RunBenchmarks.run(HelpKeyLookupBenchmark.class);
+	}
+}
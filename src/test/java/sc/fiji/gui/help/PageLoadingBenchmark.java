@@ -0,0 +1,82 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes to load a page of a local topic for the {@link DefaultLocalHelpShower},
+ * that is, into its (default size) image and text panes, for the first time and repeatedly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PageLoadingBenchmark {
+	static final HelpPagesSource TOPIC = new DirectoryPagesSource(
+			HelpManager.constructPathToLocalTopics(PanelControlledWorker.class, "Topic1"));
+	static final HelpPagesCache.Display DISPLAY = new HelpPagesCache.Display(600, 400, 1.0);
+
+	@State(Scope.Thread)
+	public static class EmptyCache {
+		@Setup(Level.Invocation)
+		public void clear() {
+			HelpPagesCache.obtain().clear();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class WarmCache {
+		@Setup(Level.Iteration)
+		public void warm() {
+			HelpPagesCache.obtain().getPage(TOPIC, 1, DISPLAY);
+		}
+	}
+
+	@Benchmark
+	public HelpPagesCache.Page firstLoad(EmptyCache state) {
+		return HelpPagesCache.obtain().getPage(TOPIC, 1, DISPLAY);
+	}
+
+	@Benchmark
+	public HelpPagesCache.Page repeatedLoad(WarmCache state) {
+		return HelpPagesCache.obtain().getPage(TOPIC, 1, DISPLAY);
+	}
+
+	public static void main(String[] args) throws Exception {
+		RunBenchmarks.run(PageLoadingBenchmark.class);
+	}
+}
@@ -0,0 +1,78 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.swing.JButton;
+import javax.swing.JPanel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes to register the given number of components into an empty help manager.
+ * Fresh components (laid out in a grid, see {@link HelpKeyLookupBenchmark#buildGrid(int)})
+ * and a fresh manager are created before every invocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RegistrationBenchmark {
+	@Param({"10", "100", "1000", "10000"})
+	int numberOfComponents;
+
+	HelpManager helpManager;
+	JButton[] components;
+	final HelpShower helpDialog = () -> {};
+
+	@Setup(Level.Invocation)
+	public void setup() {
+		helpManager = HeadlessHelpComponentsIndex.createHelpManager();
+		final JPanel root = HelpKeyLookupBenchmark.buildGrid(numberOfComponents);
+		components = new JButton[numberOfComponents];
+		for (int i = 0; i < numberOfComponents; ++i) components[i] = (JButton)root.getComponent(i);
+	}
+
+	@Benchmark
+	public HelpManager registerOneByOne() {
+		for (JButton c : components) helpManager.registerComponentHelp(c, helpDialog);
+		return helpManager;
+	}
+
+	public static void main(String[] args) throws Exception {
+		RunBenchmarks.run(RegistrationBenchmark.class);
+	}
+}
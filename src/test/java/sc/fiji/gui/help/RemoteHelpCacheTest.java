@@ -0,0 +1,277 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Exercises the {@link RemoteHelpCache} against a local stand-in of the web server,
+ * which serves "/page.html" with an ETag (and answers the conditional requests)
+ * and "/slow.html" only after a delay.
+ */
+public class RemoteHelpCacheTest {
+	private static final String ETAG = "\"v1\"";
+	private static final byte[] PAGE = "<html><body>Help <img src=\"img/a.png\"></body></html>".getBytes(StandardCharsets.ISO_8859_1);
+
+	private HttpServer server;
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger conditionalRequests = new AtomicInteger();
+	private final List<HelpMetrics.FetchOutcome> outcomes = Collections.synchronizedList(new ArrayList<>());
+	private Path cacheFolder;
+	private RemoteHelpCache cache;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			requests.incrementAndGet();
+			final String path = exchange.getRequestURI().getPath();
+			if (path.equals("/slow.html")) {
+				try {
+					Thread.sleep(2000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				conditionalRequests.incrementAndGet();
+				exchange.sendResponseHeaders(304, -1);
+				exchange.close();
+				return;
+			}
+			final byte[] body = path.equals("/missing.html") ? null
+					: path.endsWith(".png") ? ("image " + path).getBytes(StandardCharsets.ISO_8859_1) : PAGE;
+			if (body == null) {
+				exchange.sendResponseHeaders(404, -1);
+				exchange.close();
+				return;
+			}
+			exchange.getResponseHeaders().set("ETag", ETAG);
+			exchange.getResponseHeaders().set("Content-Type", path.endsWith(".png") ? "image/png" : "text/html");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(body);
+			}
+		});
+		server.start();
+
+		cacheFolder = Files.createTempDirectory("remote-help-cache");
+		cache = new RemoteHelpCache(cacheFolder);
+		cache.setTimeouts(1000, 500);
+		HelpManager.setMetrics(new HelpMetrics() {
+			@Override
+			public void remoteFetched(URL url, long duration, FetchOutcome outcome) {
+				outcomes.add(outcome);
+			}
+		});
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		HelpManager.setMetrics(null);
+		server.stop(0);
+		try (Stream<Path> files = Files.walk(cacheFolder)) {
+			for (Path p : (Iterable<Path>)files.sorted(Comparator.reverseOrder())::iterator) Files.deleteIfExists(p);
+		}
+	}
+
+	private URL url(final String path) throws IOException {
+		return new URL("http", "127.0.0.1", server.getAddress().getPort(), path);
+	}
+
+	private Path metaFile(final Path file) {
+		return file.resolveSibling(file.getFileName() + RemoteHelpCache.META_SUFFIX);
+	}
+
+	@Test
+	public void downloadsIntoCache() throws IOException {
+		final Path file = cache.fetch(url("/page.html"));
+
+		assertEquals(Collections.singletonList(HelpMetrics.FetchOutcome.DOWNLOADED), outcomes);
+		assertEquals(file, cache.getCached(url("/page.html")));
+		assertEquals(new String(PAGE, StandardCharsets.ISO_8859_1), new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1));
+		final String meta = new String(Files.readAllBytes(metaFile(file)), StandardCharsets.ISO_8859_1);
+		assertTrue(meta, meta.contains("etag=\"v1\""));
+	}
+
+	@Test
+	public void servesFreshContentWithoutAsking() throws IOException {
+		cache.fetch(url("/page.html"));
+		final Path file = cache.fetch(url("/page.html"));
+
+		assertEquals(1, requests.get());
+		assertEquals(HelpMetrics.FetchOutcome.CACHED, outcomes.get(1));
+		assertTrue(Files.exists(file));
+	}
+
+	@Test
+	public void revalidatesOutdatedContent() throws IOException {
+		cache.setRevalidationInterval(0);
+		final Path file = cache.fetch(url("/page.html"));
+		final long validated = Files.getLastModifiedTime(metaFile(file)).toMillis();
+		assertEquals(file, cache.fetch(url("/page.html")));
+
+		assertEquals(2, requests.get());
+		assertEquals(1, conditionalRequests.get());
+		assertEquals(HelpMetrics.FetchOutcome.NOT_MODIFIED, outcomes.get(1));
+		assertTrue(Files.getLastModifiedTime(metaFile(file)).toMillis() >= validated);
+		assertEquals(new String(PAGE, StandardCharsets.ISO_8859_1), new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1));
+	}
+
+	@Test
+	public void servesStaleContentWhenUnreachable() throws IOException {
+		cache.setRevalidationInterval(0);
+		final Path file = cache.fetch(url("/page.html"));
+		server.stop(0);
+
+		assertEquals(file, cache.fetch(url("/page.html")));
+		assertEquals(HelpMetrics.FetchOutcome.STALE, outcomes.get(1));
+		assertTrue(Files.exists(file));
+	}
+
+	@Test
+	public void failsWhenUnreachableAndNotCached() throws IOException {
+		//NB: a port that surely nobody listens on
+		final int port;
+		try (ServerSocket s = new ServerSocket(0)) {
+			port = s.getLocalPort();
+		}
+		final URL unreachable = new URL("http", "127.0.0.1", port, "/page.html");
+		try {
+			cache.fetch(unreachable);
+			fail("Fetching from nowhere should have failed.");
+		} catch (IOException expected) {
+			//NB: this is what should happen
+		}
+		assertEquals(Collections.singletonList(HelpMetrics.FetchOutcome.FAILED), outcomes);
+		assertNull(cache.getCached(unreachable));
+	}
+
+	@Test
+	public void failsOnTimeout() throws IOException {
+		final long start = System.currentTimeMillis();
+		try {
+			cache.fetch(url("/slow.html"));
+			fail("Fetching from a slow server should have timed out.");
+		} catch (IOException expected) {
+			//NB: this is what should happen
+		}
+		assertTrue(System.currentTimeMillis() - start < 2000);
+		assertEquals(Collections.singletonList(HelpMetrics.FetchOutcome.FAILED), outcomes);
+		assertNull(cache.getCached(url("/slow.html")));
+	}
+
+	@Test
+	public void failsOnMissingContent() throws IOException {
+		try {
+			cache.fetch(url("/missing.html"));
+			fail("Fetching a missing page should have failed.");
+		} catch (IOException expected) {
+			//NB: this is what should happen
+		}
+		assertEquals(Collections.singletonList(HelpMetrics.FetchOutcome.FAILED), outcomes);
+		assertNull(cache.getCached(url("/missing.html")));
+	}
+
+	@Test
+	public void fetchesPageWithItsImages() throws IOException {
+		final Path page = cache.fetchPage(url("/page.html"));
+		final Path image = cache.getCached(url("/img/a.png"));
+
+		assertEquals(page, cache.getCached(url("/page.html")));
+		assertTrue(image != null && Files.exists(image));
+		//the cached page is opened via its cache URL, against which its links resolve to the cached files too
+		final URL cachedImage = new URL(cache.getCachedUrl(url("/page.html")), "img/a.png");
+		assertEquals("image/png", cachedImage.openConnection().getContentType());
+	}
+
+	@Test
+	public void fetchesPointedPageFilesOnlyOnce() throws IOException {
+		final Path topicFolder = cacheFolder.resolve("topic");
+		Files.createDirectories(topicFolder);
+		Files.write(topicFolder.resolve("1.html" + HelpPagesCache.POINTER_SUFFIX),
+				url("/page.html").toExternalForm().getBytes(StandardCharsets.ISO_8859_1));
+		final HelpPagesSource topic = new DirectoryPagesSource(topicFolder);
+
+		final RemoteHelpCache sharedCache = RemoteHelpCache.obtain();
+		final Path sharedFolder = sharedCache.getCacheFolder();
+		sharedCache.setCacheFolder(cacheFolder.resolve("shared"));
+		try {
+			assertTrue(HelpPagesCache.pageExists(topic, 1));
+			for (int i = 0; i < 2; ++i) {
+				final ByteBuffer content = HelpPagesCache.readPageFile(topic, "1.html");
+				assertEquals(new String(PAGE, StandardCharsets.ISO_8859_1), StandardCharsets.ISO_8859_1.decode(content).toString());
+			}
+			assertEquals(1, requests.get());
+			assertEquals(Arrays.asList(HelpMetrics.FetchOutcome.DOWNLOADED, HelpMetrics.FetchOutcome.CACHED), outcomes);
+			final Path cached = sharedCache.getCached(url("/page.html"));
+			assertTrue(cached != null && cached.startsWith(cacheFolder.resolve("shared")));
+			assertFalse(Files.exists(topicFolder.resolve("1.html")));
+		} finally {
+			sharedCache.setCacheFolder(sharedFolder);
+		}
+	}
+
+	@Test
+	public void mapsFilesAndFoldersApart() throws IOException {
+		final Path file = cache.cachedFile(url("/a/b"));
+		final Path nested = cache.cachedFile(url("/a/b/x.png"));
+
+		assertNotEquals(file, nested.getParent());
+		assertFalse(nested.startsWith(file));
+		assertNotEquals(cache.cachedFile(url("/a/b?x=1")), file);
+	}
+}
@@ -0,0 +1,180 @@
+/*-
+ * #%L
+ * A framework for Java apps that attaches and shows simple help dialogs/wizzards to developer-chosen GUI controls.
+ * %%
+ * Copyright (C) 2024 Vladimir Ulman
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package sc.fiji.gui.help;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Validates (and exports) a fixture of three topics: a valid one, a broken one (a broken link, invalid markup
+ * and a missing page), and one that points to a local stand-in of the web server, which knows only "/ok.html".
+ */
+public class TopicValidatorTest {
+	private Path folder;
+	private Path topics;
+	private HttpServer server;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			exchange.sendResponseHeaders(exchange.getRequestURI().getPath().equals("/ok.html") ? 200 : 404, -1);
+			exchange.close();
+		});
+		server.start();
+		final String serverUrl = "http://127.0.0.1:"+server.getAddress().getPort();
+
+		folder = Files.createTempDirectory("topic-validator");
+		topics = folder.resolve("topics");
+		final Path good = Files.createDirectories(topics.resolve("good"));
+		write(good.resolve("1.html"), "<p>The first page, see also <a href=\"2.html#top\">the next one</a>"
+				+" and <a href='extra/notes.txt'>the notes</a>.</p>");
+		write(Files.createDirectories(good.resolve("extra")).resolve("notes.txt"), "Notes");
+		ImageIO.write(new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB), "png", good.resolve("1.png").toFile());
+		write(good.resolve("2.html"), "<p>The <b>last</b> page.</p>");
+
+		final Path broken = Files.createDirectories(topics.resolve("broken"));
+		write(broken.resolve("1.html"), "<p>See <a href=\"nowhere.html\">this</a>.</p>\n"
+				+"<p><b>Never ending bold.</p>\n<img alt=\"no source\">\n<section>Unknown</section>");
+		write(broken.resolve("3.html"), "<p>Nobody gets here.</p>");
+
+		final Path remote = Files.createDirectories(topics.resolve("remote"));
+		write(remote.resolve("1.html"), "<p>Online at <a href=\""+serverUrl+"/ok.html\">the web</a>.</p>");
+		write(remote.resolve("1.png" + HelpPagesCache.POINTER_SUFFIX), serverUrl+"/missing.png");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.stop(0);
+		try (Stream<Path> files = Files.walk(folder)) {
+			for (Path p : (Iterable<Path>)files.sorted(Comparator.reverseOrder())::iterator) Files.deleteIfExists(p);
+		}
+	}
+
+	private static void write(final Path file, final String content) throws IOException {
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static List<TopicValidator.Problem> of(final List<TopicValidator.Problem> problems,
+	                                               final TopicValidator.Severity severity, final String topic) {
+		return problems.stream()
+				.filter(p -> p.severity == severity && p.topicFolder.getFileName().toString().equals(topic))
+				.collect(Collectors.toList());
+	}
+
+	private static boolean reports(final List<TopicValidator.Problem> problems, final String fileName, final String message) {
+		return problems.stream().anyMatch(p -> p.fileName.equals(fileName) && p.message.contains(message));
+	}
+
+	@Test
+	public void findsBrokenLinksMarkupAndMissingPages() throws IOException {
+		final List<TopicValidator.Problem> problems = new TopicValidator(2).validate(Collections.singletonList(topics));
+
+		assertEquals(problems.toString(), 0, of(problems, TopicValidator.Severity.ERROR, "good").size()
+				+ of(problems, TopicValidator.Severity.WARNING, "good").size());
+
+		final List<TopicValidator.Problem> errors = of(problems, TopicValidator.Severity.ERROR, "broken");
+		assertEquals(problems.toString(), 3, errors.size());
+		assertTrue(problems.toString(), reports(errors, "1.html", "nowhere.html leads to no file"));
+		assertTrue(problems.toString(), reports(errors, "1.html", "<b> is not closed"));
+		assertTrue(problems.toString(), reports(errors, "1.html", "<img> has no src attribute"));
+		final List<TopicValidator.Problem> warnings = of(problems, TopicValidator.Severity.WARNING, "broken");
+		assertTrue(problems.toString(), reports(warnings, "1.html", "<section> is unknown"));
+		assertTrue(problems.toString(), reports(warnings, "3.html", "page 2 is missing"));
+
+		//NB: remote links are not checked by default
+		assertEquals(problems.toString(), 0, of(problems, TopicValidator.Severity.ERROR, "remote").size());
+		assertEquals(TopicValidator.Severity.ERROR, problems.get(0).severity);
+	}
+
+	@Test
+	public void checksRemoteLinksOnRequest() throws IOException {
+		final TopicValidator validator = new TopicValidator(2);
+		validator.setCheckRemoteLinks(true);
+		validator.setTimeout(2000);
+		final List<TopicValidator.Problem> problems = validator.validate(Collections.singletonList(topics));
+
+		final List<TopicValidator.Problem> errors = of(problems, TopicValidator.Severity.ERROR, "remote");
+		assertEquals(problems.toString(), 1, errors.size());
+		assertTrue(problems.toString(), reports(errors, "1.png.url", "/missing.png responds with 404"));
+	}
+
+	@Test
+	public void exportsStaticSite() throws IOException {
+		final Path export = folder.resolve("export");
+		final TopicValidator validator = new TopicValidator(2);
+		validator.setExportFolder(export);
+		validator.validate(Collections.singletonList(topics));
+
+		final List<String> tree;
+		try (Stream<Path> files = Files.walk(export)) {
+			tree = files.filter(Files::isRegularFile)
+					.map(p -> export.relativize(p).toString().replace(p.getFileSystem().getSeparator(), "/"))
+					.sorted().collect(Collectors.toList());
+		}
+		assertEquals(Arrays.asList(
+				"broken/index.html", "broken/page-1.html",
+				"good/1.png", "good/extra/notes.txt", "good/index.html", "good/page-1.html", "good/page-2.html",
+				"index.html",
+				"remote/index.html", "remote/page-1.html"), tree);
+
+		final String index = new String(Files.readAllBytes(export.resolve("index.html")), StandardCharsets.UTF_8);
+		assertTrue(index, index.contains("href=\"good/index.html\""));
+		final String firstPage = new String(Files.readAllBytes(export.resolve("good/page-1.html")), StandardCharsets.UTF_8);
+		assertTrue(firstPage, firstPage.contains("<img src=\"1.png\"") && firstPage.contains("href=\"page-2.html\">Next"));
+		//the links of the text lead to the exported pages and files
+		assertTrue(firstPage, firstPage.contains("<a href=\"page-2.html#top\">the next one</a>")
+				&& firstPage.contains("<a href='extra/notes.txt'>"));
+		final Path exportedTopic = export.resolve("good");
+		assertTrue(Files.isRegularFile(exportedTopic.resolve("page-2.html")));
+		assertEquals("Notes", new String(Files.readAllBytes(exportedTopic.resolve("extra/notes.txt")), StandardCharsets.UTF_8));
+		final String lastPage = new String(Files.readAllBytes(export.resolve("good/page-2.html")), StandardCharsets.UTF_8);
+		assertFalse(lastPage, lastPage.contains(">Next<"));
+	}
+}